@@ -65,6 +65,41 @@ public class GeneralSettings
             DeprecationLevel.AVAILABLE,
             false
     );
+    private final BooleanValue streaming = new BooleanValue(
+            PROCESSOR_NAME,
+            "streaming",
+            "ui.transformers.general.streaming",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    private final BooleanValue classpathIndex = new BooleanValue(
+            PROCESSOR_NAME,
+            "classpath_index",
+            "ui.transformers.general.classpath_index",
+            DeprecationLevel.AVAILABLE,
+            true
+    );
+    private final BooleanValue lazyClasspath = new BooleanValue(
+            PROCESSOR_NAME,
+            "lazy_classpath",
+            "ui.transformers.general.lazy_classpath",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    private final BooleanValue incremental = new BooleanValue(
+            PROCESSOR_NAME,
+            "incremental",
+            "ui.transformers.general.incremental",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    private final FilePathValue cacheDirectory = new FilePathValue(
+            PROCESSOR_NAME,
+            "cache_directory",
+            "ui.transformers.general.cache_directory",
+            DeprecationLevel.AVAILABLE,
+            ""
+    );
 
     static
     {
@@ -27,11 +27,15 @@ import org.objectweb.asm.tree.ClassNode;
 import org.slf4j.LoggerFactory;
 import tokyo.peya.obfuscator.configuration.ConfigManager;
 import tokyo.peya.obfuscator.configuration.Configuration;
+import tokyo.peya.obfuscator.mapping.MappingReader;
+import tokyo.peya.obfuscator.mapping.Retracer;
 import tokyo.peya.obfuscator.processor.Processors;
 import tokyo.peya.obfuscator.utils.ConsoleUtils;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -115,6 +119,12 @@ public class JavaObfuscator
         if (options.has("verbose"))
             VERBOSE = true;
 
+        if (options.has("retrace"))
+        {
+            retrace((File) options.valueOf("mapping"), (File) options.valueOf("retrace"));
+            return;
+        }
+
         String jarIn = (String) options.valueOf("jarIn");
         String jarOut = (String) options.valueOf("jarOut");
         File configPath = options.has("config") ? (File) options.valueOf("config"): null;
@@ -138,7 +148,11 @@ public class JavaObfuscator
     private static OptionParser createParser()
     {
         OptionParser parser = new OptionParser();
-        parser.accepts("jarIn").withRequiredArg().required();
+        parser.accepts("retrace")
+              .withRequiredArg()
+              .ofType(File.class)
+              .describedAs("Stack trace file to deobfuscate with --mapping");
+        parser.accepts("jarIn").requiredUnless("retrace").withRequiredArg();
         parser.accepts("jarOut").withRequiredArg();
         parser.accepts("config").withOptionalArg().ofType(File.class);
         parser.accepts("cp").withOptionalArg().describedAs("ClassPath").ofType(File.class);
@@ -160,6 +174,21 @@ public class JavaObfuscator
         return parser;
     }
 
+    private static void retrace(File mapping, File stackTrace) throws IOException
+    {
+        if (mapping == null)
+        {
+            log.error("A mapping file must be specified with --mapping to retrace a stack trace.");
+            return;
+        }
+
+        Retracer retracer = new Retracer(MappingReader.read(mapping.toPath()));
+        try (BufferedReader reader = Files.newBufferedReader(stackTrace.toPath(), StandardCharsets.UTF_8))
+        {
+            retracer.retrace(reader, new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+    }
+
     private static void printHeader(boolean embedded)
     {
 
@@ -12,6 +12,8 @@
 package tokyo.peya.obfuscator;
 
 import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -20,19 +22,34 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
 import tokyo.peya.obfuscator.annotations.ObfuscateRule;
 import tokyo.peya.obfuscator.annotations.ObfuscationTransformer;
+import tokyo.peya.obfuscator.cache.BuildCache;
+import tokyo.peya.obfuscator.cache.BuildCache.CachedClass;
+import tokyo.peya.obfuscator.classpath.ClassOrigin;
+import tokyo.peya.obfuscator.classpath.ClassPath;
+import tokyo.peya.obfuscator.classpath.ClasspathIndex;
+import tokyo.peya.obfuscator.classpath.ClasspathIndex.IndexedClass;
+import tokyo.peya.obfuscator.classpath.LibraryArchive;
+import tokyo.peya.obfuscator.clazz.ClassGraph;
+import tokyo.peya.obfuscator.clazz.ClassHierarchyResolver;
 import tokyo.peya.obfuscator.clazz.ClassReference;
-import tokyo.peya.obfuscator.clazz.ClassTree;
 import tokyo.peya.obfuscator.clazz.ClassWrapper;
 import tokyo.peya.obfuscator.clazz.ModifiedClassWriter;
 import tokyo.peya.obfuscator.clazz.ObfuscatorClassLoader;
+import tokyo.peya.obfuscator.configuration.ConfigManager;
 import tokyo.peya.obfuscator.configuration.Configuration;
 import tokyo.peya.obfuscator.configuration.ValueManager;
+import tokyo.peya.obfuscator.io.ArchiveEntry;
+import tokyo.peya.obfuscator.io.JarArchiveReader;
+import tokyo.peya.obfuscator.io.JarArchiveWriter;
 import tokyo.peya.obfuscator.processor.InvokeDynamic;
 import tokyo.peya.obfuscator.processor.Packager;
 import tokyo.peya.obfuscator.processor.Processors;
 import tokyo.peya.obfuscator.processor.naming.INameObfuscationProcessor;
+import tokyo.peya.obfuscator.processor.naming.NameObfuscation;
 import tokyo.peya.obfuscator.processor.naming.entrypoint.EntrypointDelegate;
 import tokyo.peya.obfuscator.processor.naming.entrypoint.EntrypointDelegateProvider;
 import tokyo.peya.obfuscator.state.ClassReadingContext;
@@ -44,16 +61,13 @@ import tokyo.peya.obfuscator.state.ObfuscationState;
 import tokyo.peya.obfuscator.state.ObfuscationStatus;
 import tokyo.peya.obfuscator.state.ProcessingContext;
 import tokyo.peya.obfuscator.state.ResourcesWritingContext;
-import tokyo.peya.obfuscator.utils.ExcludePattern;
-import tokyo.peya.obfuscator.utils.MissingClassException;
-import tokyo.peya.obfuscator.utils.ParallelExecutor;
+import tokyo.peya.obfuscator.utils.BoundedPipeline;
+import tokyo.peya.obfuscator.utils.ExcludeMatcher;
 import tokyo.peya.obfuscator.utils.Utils;
+import tokyo.peya.obfuscator.utils.WorkStealingScheduler;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -63,32 +77,35 @@ import java.lang.annotation.Annotation;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
-import java.util.zip.CRC32;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 @Getter
 @Slf4j(topic = "Obfuscator")
 public class Obfuscator
 {
     private static final GeneralSettings SETTINGS = new GeneralSettings();
+    /**
+     * 変換で追加されたクラスはフレームを持たないことがあるため, 常に全て計算する.
+     */
+    private static final int ADDITIONAL_CLASS_COMPUTE_MODE = ModifiedClassWriter.COMPUTE_MAXS | ModifiedClassWriter.COMPUTE_FRAMES;
     @Getter
     private final Configuration config;
     private final UniqueNameProvider nameProvider;
@@ -96,20 +113,44 @@ public class Obfuscator
     private final Packager packager;
     private final InvokeDynamic invokeDynamic;
     private final HashMap<String, byte[]> files;
-    private final Map<ClassReference, ClassWrapper> classPath;
-    private final HashMap<ClassReference, ClassNode> classes;
-    private final Map<ClassReference, ClassTree> hierarchy;
-    private final Set<ClassWrapper> libraryClassNodes;
+    private final ClassPath classPath;
+    private final Map<ClassReference, ClassNode> classes;
+    private final List<LibraryArchive> libraryArchives;
+    private final WorkStealingScheduler scheduler;
+    private final ClassHierarchyResolver hierarchyResolver;
     private final List<IClassTransformer> processors;
     private final List<INameObfuscationProcessor> nameObfuscationProcessors;
-    private final List<Pattern> excludePatterns;
+    private final ExcludeMatcher excludeMatcher;
 
     @Setter
     private ObfuscationStatus status;
     public ScriptBridge script;
     private boolean entrypointChanged;
     private ClassReference mainClass;
-    private int computeMode;
+    /**
+     * 名前の難読化で最後に構築された継承関係のグラフ. まだ構築されていない場合は {@code null}.
+     */
+    private volatile ClassGraph hierarchy;
+    /**
+     * クラスごとの {@link ModifiedClassWriter} のフラグ. 変換時のコールバックから決定される.
+     */
+    private final Map<ClassReference, Integer> computeModes;
+    /**
+     * 名前の難読化で名前が変わったクラスの, 変更前と変更後の名前.
+     */
+    private final Map<ClassReference, ClassReference> renamedClasses;
+    /**
+     * 差分難読化のためのビルド・キャッシュ. 無効な場合は {@code null}.
+     */
+    private BuildCache buildCache;
+    /**
+     * クラスごとのキャッシュ・キー. 名前が変わった場合は, 変更後の名前で引ける.
+     */
+    private final Map<ClassReference, String> buildKeys;
+    /**
+     * 今回の実行で, 変換によって追加されたクラスの内部名. 名前が変わった場合は, 変更後の名前になる.
+     */
+    private final Set<String> additionalClassNames;
 
     static
     {
@@ -125,11 +166,16 @@ public class Obfuscator
         this.packager = new Packager(this);
         this.invokeDynamic = new InvokeDynamic(this);
         this.files = new HashMap<>();
-        this.classPath = new HashMap<>();
-        this.classes = new HashMap<>();
-        this.hierarchy = new HashMap<>();
-        this.libraryClassNodes = new HashSet<>();
-        this.excludePatterns = compileExcludePatterns();
+        this.classPath = new ClassPath();
+        this.classes = new ConcurrentHashMap<>();
+        this.libraryArchives = new ArrayList<>();
+        this.scheduler = new WorkStealingScheduler(config.getNThreads());
+        this.hierarchyResolver = new ClassHierarchyResolver(this);
+        this.computeModes = new ConcurrentHashMap<>();
+        this.renamedClasses = new ConcurrentHashMap<>();
+        this.buildKeys = new ConcurrentHashMap<>();
+        this.additionalClassNames = ConcurrentHashMap.newKeySet();
+        this.excludeMatcher = ExcludeMatcher.compile(SETTINGS.getExcludedClasses().get());
         this.status = new ObfuscationStatus();
 
         this.mainClass = null;
@@ -143,151 +189,132 @@ public class Obfuscator
 
     private boolean isExcludedClass(String name)
     {
-        for (Pattern pattern : this.excludePatterns)
-            if (pattern.matcher(name).matches())
-                return true;
+        return this.excludeMatcher.matches(name);
+    }
 
-        return false;
+    /**
+     * 指定されたクラスとその祖先から継承関係のグラフを構築し, {@link #getHierarchy()} で参照できるようにします.
+     *
+     * @param classWrappers      グラフに含めるクラス
+     * @param acceptMissingClass 祖先が見つからない場合に, 例外を送出せずに警告を出すかどうか
+     * @return 構築されたグラフ
+     */
+    public ClassGraph buildHierarchy(Collection<? extends ClassWrapper> classWrappers, boolean acceptMissingClass)
+    {
+        ClassGraph graph = ClassGraph.build(classWrappers, this.classPath::get, acceptMissingClass, this.scheduler);
+        this.hierarchy = graph;
+        return graph;
     }
 
-    public ClassTree getTree(ClassReference ref)
+    private void loadClasspath(List<String> libraryFileNames) throws IOException
     {
-        if (!this.hierarchy.containsKey(ref))
-        {
-            ClassWrapper wrapper = this.classPath.get(ref);
+        ClasspathReadingContext context = new ClasspathReadingContext(this.status);
+        context.setTotalFilesToRead(libraryFileNames.size());
+        this.status.setState(
+                ObfuscationState.READING_CLASS_PATH,
+                context
+        );
 
-            if (wrapper == null)
-                return null;
+        long startTime = System.currentTimeMillis();
+        log.info(Localisation.get("logs.obfuscation.classpath.loading"));
 
-            this.buildHierarchy(wrapper, null, false);
-        }
+        List<File> libraryFiles = this.resolveLibraryFiles(libraryFileNames);
+        context.setTotalFilesToRead(libraryFiles.size());
 
-        return this.hierarchy.get(ref);
-    }
+        // 遅延読み込みの場合はクラス名だけを索引し, 解析は必要になったときに行う
+        boolean lazy = SETTINGS.getLazyClasspath().get();
+        Path indexDirectory = !lazy && SETTINGS.getClasspathIndex().get() ? this.getCacheDirectory().resolve("classpath"): null;
 
-    public void buildHierarchy(ClassWrapper classWrapper, ClassWrapper sub, boolean acceptMissingClass)
-    {
-        ClassReference ref = ClassReference.of(classWrapper.classNode.name);
-        if (this.hierarchy.get(ref) == null)
+        // インデックスが使えるライブラリはそのまま復元し, それ以外はまとめて並列に解析する
+        Map<LibraryArchive, List<IndexedClass>> loaded = new LinkedHashMap<>();
+        List<LibraryArchive> toParse = new ArrayList<>();
+        int i = 0;
+        for (File file : libraryFiles)
         {
-            ClassTree tree = new ClassTree(classWrapper);
-            if (classWrapper.classNode.superName != null)
-            {
-                ClassReference superRef = ClassReference.of(classWrapper.classNode.superName);
-                tree.parentClasses.add(superRef);
-                ClassWrapper superClass = this.classPath.get(superRef);
-
-                if (superClass == null)
-                {
-                    if (!acceptMissingClass)
-                        throw new MissingClassException(
-                                Localisation.access("logs.obfuscation.hierarchy.missing_super_class.fatal")
-                                            .set("missingSuperClass", classWrapper.classNode.superName)
-                                            .set("referencingClass", classWrapper.classNode.name)
-                                            .get()
-                        );
-
-                    tree.missingSuperClass = true;
-
-                    log.warn(Localisation.access("logs.obfuscation.hierarchy.missing_super_class")
-                                         .set("missingSuperClass", classWrapper.classNode.superName)
-                                         .set("referencingClass", classWrapper.classNode.name)
-                                         .get()
-                    );
-                }
-                else
-                {
-                    buildHierarchy(superClass, classWrapper, acceptMissingClass);
+            log.info(Localisation.access("logs.obfuscation.classpath.loading_each")
+                                 .set("filePath", file.getAbsolutePath())
+                                 .set("percent", ++i * 100 / libraryFiles.size())
+                                 .get()
+            );
 
-                    // Inherit the missingSuperClass state
-                    if (this.hierarchy.get(superRef).missingSuperClass)
-                        tree.missingSuperClass = true;
-                }
+            LibraryArchive archive;
+            try
+            {
+                archive = LibraryArchive.open(file);
             }
-            if (classWrapper.classNode.interfaces != null && !classWrapper.classNode.interfaces.isEmpty())
+            catch (IOException e)
             {
-                for (String s : classWrapper.classNode.interfaces)
-                {
-                    ClassReference interfaceRef = ClassReference.of(s);
-                    tree.parentClasses.add(interfaceRef);
-                    ClassWrapper interfaceClass = this.classPath.get(interfaceRef);
-
-                    if (interfaceClass == null)
-                    {
-                        if (!acceptMissingClass)
-                            throw new MissingClassException(
-                                    Localisation.access("logs.obfuscation.hierarchy.missing_interface.fatal")
-                                                .set("missingInterface", s)
-                                                .set("referencingClass", classWrapper.classNode.name)
-                                                .get()
-                            );
-
-                        tree.missingSuperClass = true;
-
-                        log.warn(Localisation.access("logs.obfuscation.hierarchy.missing_interface")
-                                             .set("missingInterface", s)
-                                             .set("referencingClass", classWrapper.classNode.name)
-                                             .get()
-                        );
-                    }
-                    else
-                    {
-                        this.buildHierarchy(interfaceClass, classWrapper, acceptMissingClass);
-
-                        // Inherit the missingSuperClass state
-                        if (this.hierarchy.get(interfaceRef).missingSuperClass)
-                            tree.missingSuperClass = true;
-                    }
-                }
+                log.warn(Localisation.access("logs.obfuscation.classpath.read.fail")
+                                     .set("fileName", file.getName())
+                                     .set("filePath", file.getAbsolutePath())
+                                     .get()
+                );
+                continue;
             }
+            this.libraryArchives.add(archive);
 
-            this.hierarchy.put(ref, tree);
-        }
-        if (sub != null)
-            this.hierarchy.get(ref).subClasses.add(ClassReference.of(sub.classNode.name));
-    }
+            if (lazy)
+            {
+                log.debug(Localisation.access("logs.obfuscation.classpath.lazy.indexed")
+                                      .set("fileName", file.getName())
+                                      .set("classes", this.classPath.addLazy(archive))
+                                      .get()
+                );
+                context.setTotalFilesLoaded(i);
+                continue;
+            }
 
-    private List<byte[]> loadClasspathFile(File file, ClasspathReadingContext ctxt) throws IOException
-    {
-        ZipFile zipIn = new ZipFile(file);
-        Enumeration<? extends ZipEntry> entries = zipIn.entries();
-        ctxt.setTotalClassesToLoad(zipIn.size());
+            List<IndexedClass> indexed = indexDirectory == null ? null: readClasspathIndex(indexDirectory, archive);
+            if (indexed != null)
+                log.debug(Localisation.access("logs.obfuscation.classpath.index.hit")
+                                      .set("fileName", file.getName())
+                                      .set("classes", indexed.size())
+                                      .get()
+                );
+            else
+                toParse.add(archive);
 
-        boolean isModule = file.getName().endsWith(".jmod");
+            loaded.put(archive, indexed);
+            context.setTotalFilesLoaded(i);
+        }
+
+        Map<LibraryArchive, List<IndexedClass>> parsed = parseClassPath(context, toParse);
+        loaded.putAll(parsed);
 
-        List<byte[]> byteList = new ArrayList<>(zipIn.size());
+        if (indexDirectory != null)
+            for (Map.Entry<LibraryArchive, List<IndexedClass>> entry : parsed.entrySet())
+                writeClasspathIndex(indexDirectory, entry.getKey(), entry.getValue());
 
-        long loaded = 0;
-        while (entries.hasMoreElements())
+        // クラスパスの順序で登録し, 同名のクラスは先に見つかったものを優先する
+        long classes = 0;
+        for (Map.Entry<LibraryArchive, List<IndexedClass>> entry : loaded.entrySet())
         {
-            ZipEntry ent = entries.nextElement();
-            if (ent.getName().endsWith(".class")
-                    && (!isModule || !ent.getName().endsWith("module-info.class")
-                    && ent.getName().startsWith("classes/")))
+            LibraryArchive archive = entry.getKey();
+            for (IndexedClass indexedClass : entry.getValue())
             {
-                ctxt.setLoadingClassName(file.getName() + " -> " + ent.getName());
-                byteList.add(ByteStreams.toByteArray(zipIn.getInputStream(ent)));
+                ClassNode node = indexedClass.getNode();
+                this.classPath.putIfAbsent(
+                        ClassReference.of(node),
+                        ClassWrapper.ofSource(node, true, archive.getClassSource(indexedClass.getEntry()))
+                );
+                classes++;
             }
-
-            ctxt.setTotalClassesLoaded(++loaded);
         }
-        zipIn.close();
 
-        return byteList;
-    }
+        log.info(Localisation.access("logs.obfuscation.classpath.read.success")
+                             .set("classes", classes)
+                             .get()
+        );
 
-    private void loadClasspath(List<String> libraryFileNames) throws IOException
-    {
-        ClasspathReadingContext context = new ClasspathReadingContext(this.status);
-        context.setTotalFilesToRead(libraryFileNames.size());
-        this.status.setState(
-                ObfuscationState.READING_CLASS_PATH,
-                context
+        log.info(Localisation.access("logs.task_finished")
+                             .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
+                             .get()
         );
 
-        long startTime = System.currentTimeMillis();
-        log.info(Localisation.get("logs.obfuscation.classpath.loading"));
+    }
 
+    private List<File> resolveLibraryFiles(List<String> libraryFileNames) throws IOException
+    {
         List<File> libraryFiles = new ArrayList<>();
         for (String s : libraryFileNames)
         {
@@ -300,109 +327,156 @@ public class Obfuscator
                 );
                 continue;
             }
-            libraryFiles.add(file);
-        }
 
-        int i = 0;
-        LinkedList<byte[]> classList = new LinkedList<>();
-        for (File file : libraryFiles)
-        {
             if (file.isFile())
             {
-                log.info(Localisation.access("logs.obfuscation.classpath.loading_each")
-                                     .set("filePath", file.getAbsolutePath())
-                                     .set("percent", ++i * 100 / libraryFiles.size())
-                                     .get()
-                );
-                classList.addAll(loadClasspathFile(file, context));
-                context.setTotalFilesLoaded(i++);
+                libraryFiles.add(file);
                 continue;
             }
 
             try (Stream<Path> stream = Files.walk(file.toPath()))
             {
-                AtomicLong totalFiles = new AtomicLong(0);
                 stream.map(Path::toFile)
                       .filter(f -> f.getName().endsWith(".jar")
                               || f.getName().endsWith(".zip")
                               || f.getName().endsWith(".jmod"))
+                      .sorted()
                       .forEach(f -> {
                           log.debug(Localisation.access("logs.obfuscation.classpath.read.reading_file")
                                                 .set("fileName", f.getName())
                                                 .set("filePath", f.getAbsolutePath())
                                                 .get()
                           );
-                          try
-                          {
-                              classList.addAll(loadClasspathFile(f, context));
-                          }
-                          catch (IOException e)
-                          {
-                              log.warn(Localisation.access("logs.obfuscation.classpath.read.fail")
-                                                   .set("fileName", f.getName())
-                                                   .set("filePath", f.getAbsolutePath())
-                                                   .get()
-                              );
-                          }
-
-                          context.setTotalFilesLoaded(totalFiles.incrementAndGet());
+                          libraryFiles.add(f);
                       });
             }
         }
 
-        log.info(Localisation.access("logs.obfuscation.classpath.read.success")
-                             .set("classes", classList.size())
-                             .get()
-        );
-
-        this.classPath.putAll(parseClassPath(context, classList, this.config.getNThreads()));
-        this.libraryClassNodes.addAll(this.classPath.values());
-
+        return libraryFiles;
+    }
 
-        log.info(Localisation.access("logs.task_finished")
-                             .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
-                             .get()
-        );
+    private static List<IndexedClass> readClasspathIndex(Path indexDirectory, LibraryArchive archive)
+    {
+        try
+        {
+            return ClasspathIndex.read(ClasspathIndex.getIndexFile(indexDirectory, archive.getFile()), archive);
+        }
+        catch (IOException e)
+        {
+            log.warn(Localisation.access("logs.obfuscation.classpath.index.read_fail")
+                                 .set("fileName", archive.getFile().getName())
+                                 .get(), e
+            );
+            return null;
+        }
+    }
 
+    private static void writeClasspathIndex(Path indexDirectory, LibraryArchive archive, List<IndexedClass> classes)
+    {
+        try
+        {
+            ClasspathIndex.write(ClasspathIndex.getIndexFile(indexDirectory, archive.getFile()), archive, classes);
+        }
+        catch (IOException e)
+        {
+            log.warn(Localisation.access("logs.obfuscation.classpath.index.write_fail")
+                                 .set("fileName", archive.getFile().getName())
+                                 .get(), e
+            );
+        }
     }
 
-    private Map<ClassReference, ClassWrapper> parseClassPath(ClasspathReadingContext ctxt, final LinkedList<byte[]> byteList, int threads)
+    private Map<LibraryArchive, List<IndexedClass>> parseClassPath(ClasspathReadingContext ctxt, List<LibraryArchive> archives)
     {
-        ctxt.reset();
-        ctxt.setTotalClassesToLoad(byteList.size());
+        List<Map.Entry<LibraryArchive, ArchiveEntry>> entries = new ArrayList<>();
+        for (LibraryArchive archive : archives)
+            for (ArchiveEntry entry : archive.getClassEntries())
+                entries.add(Map.entry(archive, entry));
+
+        ctxt.setTotalClassesToLoad(entries.size());
+        if (entries.isEmpty())
+            return new LinkedHashMap<>();
 
         log.info(Localisation.get("logs.obfuscation.classpath.parsing_class"));
         AtomicLong totalClassesRead = new AtomicLong(0);
-        return ParallelExecutor.runInParallelAndMerge(
-                threads, () -> () -> {
-                    Map<ClassReference, ClassWrapper> localMap = new HashMap<>();
-                    while (true)
-                    {
-                        byte[] bytes;
-                        synchronized (byteList)
-                        {
-                            if (byteList.isEmpty())
-                                break;
-                            bytes = byteList.removeFirst();
-                        }
+        Map<ArchiveEntry, ClassNode> nodes = new ConcurrentHashMap<>(entries.size());
+        this.scheduler.forEach(entries, archiveEntry -> {
+            LibraryArchive archive = archiveEntry.getKey();
+            ArchiveEntry entry = archiveEntry.getValue();
+            try
+            {
+                // 展開もワーカ・スレッドで行う
+                ClassReader reader = new ClassReader(archive.getReader().read(entry));
+                ClassNode node = new ClassNode();
+                reader.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
 
-                        ClassReader reader = new ClassReader(bytes);
-                        ClassNode node = new ClassNode();
-                        reader.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                nodes.put(entry, node);
+                ctxt.setLoadingClassName(node.name);
+            }
+            catch (Exception e)
+            {
+                log.warn(Localisation.access("logs.obfuscation.classpath.read.fail")
+                                     .set("fileName", entry.getName())
+                                     .set("filePath", archive.getFile().getAbsolutePath())
+                                     .get(), e
+                );
+            }
+            ctxt.setTotalClassesLoaded(totalClassesRead.incrementAndGet());
+        });
 
-                        ClassWrapper wrapper = new ClassWrapper(node, true, bytes);
-                        localMap.put(ClassReference.of(node), wrapper);
-                        ctxt.setLoadingClassName(node.name);
-                        ctxt.setTotalClassesLoaded(totalClassesRead.incrementAndGet());
-                    }
-                    return localMap;
-                }
-        );
+        // アーカイブ内の順序に並べ直す
+        Map<LibraryArchive, List<IndexedClass>> result = new LinkedHashMap<>();
+        for (LibraryArchive archive : archives)
+        {
+            List<IndexedClass> classes = new ArrayList<>();
+            for (ArchiveEntry entry : archive.getClassEntries())
+            {
+                ClassNode node = nodes.get(entry);
+                if (node != null)
+                    classes.add(new IndexedClass(entry, node));
+            }
+            result.put(archive, classes);
+        }
+
+        return result;
+    }
+
+    /**
+     * キャッシュを保存するディレクトリを返します.
+     *
+     * @return キャッシュ・ディレクトリ
+     */
+    public Path getCacheDirectory()
+    {
+        String directory = SETTINGS.getCacheDirectory().get();
+        if (StringUtils.isBlank(directory))
+            return Paths.get(System.getProperty("user.home"), ".javaobfuscator", "cache");
+
+        return Paths.get(directory);
+    }
+
+    private void closeLibraries()
+    {
+        for (LibraryArchive archive : this.libraryArchives)
+            try
+            {
+                archive.close();
+            }
+            catch (IOException ignored)
+            {
+            }
+
+        this.libraryArchives.clear();
     }
 
     public boolean isLibrary(ClassNode classNode)
     {
-        return this.libraryClassNodes.stream().anyMatch(e -> e.classNode.name.equals(classNode.name));
+        return this.isLibrary(ClassReference.of(classNode));
+    }
+
+    public boolean isLibrary(ClassReference ref)
+    {
+        return this.classPath.getOrigin(ref) == ClassOrigin.LIBRARY;
     }
 
     public boolean isLoadedCode(ClassNode classNode)
@@ -427,15 +501,14 @@ public class Obfuscator
     {
         loadClasspath(this.config.getLibraries());
 
-        ZipOutputStream outJar = null;
-        ZipInputStream inJar = null;
+        JarArchiveWriter outJar = null;
         this.prepareForProcessing();
 
         try
         {
             boolean useStore = SETTINGS.getUseStore().get();
 
-            outJar = getOutJarStream(this.config.getOutput(), useStore);
+            outJar = this.getOutJarStream(this.config.getOutput(), useStore);
 
             if (isClass(this.config.getInput()))  // .jar ではなく, .class ファイルが指定された場合の処理
             {
@@ -443,9 +516,13 @@ public class Obfuscator
                 return;
             }
 
-            inJar = getInJarStream(this.config.getInput());
+            if (this.isStreamingAvailable())
+            {
+                this.processJarStreaming(outJar);
+                return;
+            }
 
-            this.processJarObfuscation(useStore, inJar, outJar);
+            this.processJarObfuscation(outJar);
         }
         catch (InterruptedException ignored)
         {
@@ -463,21 +540,13 @@ public class Obfuscator
             if (outJar != null)
                 finishProcessing(outJar);
 
-            if (inJar != null)
-                try
-                {
-                    inJar.close();
-                }
-                catch (IOException ignored)
-                {
-                }
+            this.closeLibraries();
+            this.scheduler.close();
         }
     }
 
-    private void processOneClassObfuscation(String input, ZipOutputStream outJar) throws Exception
+    private void processOneClassObfuscation(String input, JarArchiveWriter outJar) throws Exception
     {
-        boolean useStore = SETTINGS.getUseStore().get();
-
         Path path = Paths.get(input);
         String fileName = path.getFileName().toString();
 
@@ -491,66 +560,55 @@ public class Obfuscator
         }
 
         Map<String, byte[]> toWrite = this.processClasses(this.classes);
-        finishOutJar(toWrite, outJar, useStore);
+        finishOutJar(toWrite, outJar);
     }
 
-    private void finishProcessing(ZipOutputStream stream)
+    private void finishProcessing(JarArchiveWriter stream)
     {
         try
         {
             log.info(Localisation.get("logs.obfuscation.finishing"));
-            stream.flush();
+            // 圧縮中のエントリとセントラル・ディレクトリは, ここで書き込まれる
             stream.close();
             log.info(Localisation.get("logs.obfuscation.finished"));
         }
-        catch (Exception ignored)
+        catch (Exception e)
         {
+            log.error(Localisation.get("logs.obfuscation.error.an_error_occurred"), e);
         }
     }
 
-    private Map<String, byte[]> readJarClasses(ZipInputStream input, ZipOutputStream outJar) throws IOException
+    private Map<String, byte[]> readJarClasses(JarArchiveReader reader, JarArchiveWriter outJar) throws IOException
     {
+        List<ArchiveEntry> entries = reader.getEntries();
+
         ClassReadingContext ctxt = new ClassReadingContext(this.status);
-        try (ZipFile zipFile = new ZipFile(this.config.getInput()))
-        {
-            ctxt.setTotalClassesToRead(zipFile.size());
-        }
+        ctxt.setTotalClassesToRead(entries.size());
         this.status.setState(
                 ObfuscationState.READING_CLASSES,
                 ctxt
         );
 
-        long classes = 0;
+        // 展開は並列に行い, 登録は入力の順序どおりに行う
+        AtomicLong read = new AtomicLong(0);
+        byte[][] entryDataList = reader.readAll(
+                this.scheduler.getExecutor(), this.config.getNThreads(), entry -> {
+                    ctxt.setReadingClassName(this.config.getInput() + " -> " + entry.getName());
+                    ctxt.setTotalClassesRead(read.incrementAndGet());
+                }
+        );
+
         Map<String, byte[]> classDataMap = new HashMap<>();
-        while (true)
+        for (ArchiveEntry entry : entries)
         {
-            ZipEntry entry = input.getNextEntry();
-
-            if (entry == null)
-                break;
-
             String entryName = entry.getName();
             if (entry.isDirectory())
             {
-                outJar.putNextEntry(entry);
+                this.writeEntry(outJar, entryName, new byte[0]);
                 continue;
             }
 
-            ctxt.setReadingClassName(this.config.getInput() + " -> " + entry.getName());
-
-            byte[] data = new byte[4096];
-            ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
-
-            int len;
-            do
-            {
-                len = input.read(data);
-                if (len > 0)
-                    entryBuffer.write(data, 0, len);
-            }
-            while (len != -1);
-
-            byte[] entryData = entryBuffer.toByteArray();
+            byte[] entryData = entryDataList[entry.getIndex()];
 
             // メイン・クラスの差し替え
             this.entrypointDelegateProvider.enableDelegateAuto(entryName, entryData);
@@ -566,8 +624,6 @@ public class Obfuscator
 
             registerClassBytes(entryName, entryData);
             classDataMap.put(entryName, entryData);
-
-            ctxt.setTotalClassesRead(++classes);
         }
 
         return classDataMap;
@@ -599,7 +655,7 @@ public class Obfuscator
         return classNode;
     }
 
-    private void processJarObfuscation(boolean stored, ZipInputStream inJar, ZipOutputStream outJar) throws Exception
+    private void processJarObfuscation(JarArchiveWriter outJar) throws Exception
     {
         long startTime = System.currentTimeMillis();
 
@@ -607,7 +663,11 @@ public class Obfuscator
                              .set("jarName", this.config.getInput())
                              .get()
         );
-        Map<String, byte[]> classDataMap = readJarClasses(inJar, outJar);
+        Map<String, byte[]> classDataMap;
+        try (JarArchiveReader reader = new JarArchiveReader(Paths.get(this.config.getInput())))
+        {
+            classDataMap = readJarClasses(reader, outJar);
+        }
 
         for (Map.Entry<ClassReference, ClassNode> stringClassNodeEntry : this.classes.entrySet())
             this.classPath.put(
@@ -619,16 +679,274 @@ public class Obfuscator
                     )
             );
 
-        for (ClassNode value : this.classes.values())
-            this.libraryClassNodes.add(new ClassWrapper(value, false, null));
+        log.info(Localisation.access("logs.task_finished")
+                             .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
+                             .get()
+        );
+
+        this.openBuildCache();
+
+        Map<String, byte[]> toWrite = this.processClasses(this.classes);
+        finishOutJar(toWrite, outJar);
+    }
+
+    private boolean isStreamingAvailable()
+    {
+        if (!SETTINGS.getStreaming().get())
+            return false;
+
+        // 名前の難読化は全クラスを見渡す必要があるため, ストリーミングできない
+        for (INameObfuscationProcessor processor : this.nameObfuscationProcessors)
+            if (processor.isEnabled())
+            {
+                log.warn(Localisation.access("logs.obfuscation.streaming.fallback")
+                                     .set("processor", processor.getClass().getSimpleName())
+                                     .get()
+                );
+                return false;
+            }
+
+        return true;
+    }
+
+    private void processJarStreaming(JarArchiveWriter outJar) throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+
+        log.info(Localisation.access("logs.obfuscation.reading_input")
+                             .set("jarName", this.config.getInput())
+                             .get()
+        );
+
+        try (JarArchiveReader reader = new JarArchiveReader(Paths.get(this.config.getInput())))
+        {
+            Map<String, ClassReference> classEntries = this.readClassSkeletons(reader);
+
+            log.info(Localisation.access("logs.task_finished")
+                                 .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
+                                 .get()
+            );
+
+            this.openBuildCache();
+            this.streamEntries(reader, classEntries, outJar);
+
+            // フレームの計算で入力クラスを読み込む可能性があるため, 入力を閉じる前に生成する
+            if (this.packager.isEnabled())
+                for (Map.Entry<String, byte[]> entry : this.generatePackageDecrypter().entrySet())
+                    this.writeEntry(outJar, entry.getKey(), entry.getValue());
+        }
+
+        // メイン・クラスが書き換わる可能性があるリソースは, 最後に書き込む
+        this.writeResources(outJar);
+    }
+
+    private Map<String, ClassReference> readClassSkeletons(JarArchiveReader reader)
+    {
+        List<ArchiveEntry> entries = reader.getEntries();
+
+        ClassReadingContext ctxt = new ClassReadingContext(this.status);
+        ctxt.setTotalClassesToRead(entries.size());
+        this.status.setState(
+                ObfuscationState.READING_CLASSES,
+                ctxt
+        );
+
+        // 階層の解決に必要な情報だけを読み込み, バイト列は必要になったときに再度読み込む
+        Map<String, ClassReference> classEntries = new HashMap<>();
+        long read = 0;
+        for (ArchiveEntry entry : entries)
+        {
+            String entryName = entry.getName();
+            if (!entry.isDirectory() && isClass(entryName))
+            {
+                ctxt.setReadingClassName(this.config.getInput() + " -> " + entryName);
+                try
+                {
+                    ClassNode node = new ClassNode();
+                    new ClassReader(reader.read(entry)).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+                    ClassReference ref = ClassReference.of(node);
+                    this.classes.put(ref, node);
+                    this.classPath.put(ref, ClassWrapper.ofSource(node, false, reader.asByteSource(entry)));
+                    classEntries.put(entryName, ref);
+                }
+                catch (Exception e)
+                {
+                    // リソースとしてそのままコピーされる
+                    log.warn(
+                            Localisation.access("logs.obfuscation.error.fail_read").get(),
+                            e
+                    );
+                }
+            }
+
+            ctxt.setTotalClassesRead(++read);
+        }
+
+        return classEntries;
+    }
+
+    private void streamEntries(JarArchiveReader reader,
+                               Map<String, ClassReference> classEntries,
+                               JarArchiveWriter outJar) throws IOException, InterruptedException
+    {
+        ProcessingContext ctxt = new ProcessingContext(this.status);
+        ctxt.setTotalClassesToProcess(classEntries.size());
+        this.status.setState(
+                ObfuscationState.PROCESSING_CLASSES,
+                ctxt
+        );
+
+        long startTime = System.currentTimeMillis();
+
+        // 名前の難読化が無いため, InvokeDynamic も同じパスで実行できる
+        List<IClassTransformer> processors = new ArrayList<>(this.processors);
+        if (InvokeDynamic.isEnabled())
+        {
+            this.invokeDynamic.prepare(classEntries.values());
+            processors.add(this.invokeDynamic);
+        }
+
+        int threadCount = this.config.getNThreads();
+        int window = Math.max(1, threadCount) * 4;
+        log.info(Localisation.access("logs.obfuscation.streaming.begin")
+                             .set("classes", classEntries.size())
+                             .set("threads", threadCount)
+                             .set("window", window)
+                             .get()
+        );
+
+        AtomicLong processed = new AtomicLong(0);
+        AtomicLong reused = new AtomicLong(0);
+        Set<String> reusedReferences = ConcurrentHashMap.newKeySet();
+        Set<String> writtenEntries = new HashSet<>();
+        BoundedPipeline.ResultConsumer<List<Map.Entry<String, byte[]>>> writer = results -> {
+            for (Map.Entry<String, byte[]> result : results)
+                if (writtenEntries.add(result.getKey()))
+                    this.writeEntry(outJar, result.getKey(), result.getValue());
+        };
+
+        try (BoundedPipeline<List<Map.Entry<String, byte[]>>> pipeline =
+                     new BoundedPipeline<>(this.scheduler.getExecutor(), window, writer))
+        {
+            for (ArchiveEntry entry : reader.getEntries())
+            {
+                String entryName = entry.getName();
+                if (entry.isDirectory())
+                {
+                    pipeline.offer(List.of(Map.entry(entryName, new byte[0])));
+                    continue;
+                }
+
+                ClassReference ref = classEntries.get(entryName);
+                if (ref != null)
+                {
+                    ClassWrapper wrapper = this.classPath.get(ref);
+                    pipeline.submit(() -> this.streamClass(
+                            ctxt,
+                            ref,
+                            wrapper,
+                            processors,
+                            classEntries.size(),
+                            processed,
+                            reused,
+                            reusedReferences
+                    ));
+                    continue;
+                }
+
+                byte[] entryData = reader.read(entry);
+
+                // メイン・クラスの差し替え
+                this.entrypointDelegateProvider.enableDelegateAuto(entryName, entryData);
+                EntrypointDelegate delegate = this.entrypointDelegateProvider.getOptimalDelegateFor(entryName, entryData);
+                if (delegate != null)
+                    this.setMainClass(delegate.getEntrypointClassReference(entryName, entryData));
+
+                if (this.entrypointDelegateProvider.isDelegateEnabled(entryName))
+                    this.files.put(entryName, entryData);
+                else
+                    pipeline.offer(List.of(Map.entry(entryName, entryData)));
+            }
+
+            pipeline.finish();
+        }
+
+        if (this.buildCache != null)
+        {
+            log.info(Localisation.access("logs.obfuscation.incremental.hit")
+                                 .set("hits", reused.get())
+                                 .set("classes", classEntries.size())
+                                 .get()
+            );
+
+            for (Map.Entry<String, byte[]> carried : this.saveBuildCache(reusedReferences, Set.of()).entrySet())
+                if (writtenEntries.add(carried.getKey()))
+                    this.writeEntry(outJar, carried.getKey(), carried.getValue());
+        }
 
         log.info(Localisation.access("logs.task_finished")
                              .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
                              .get()
         );
+    }
+
+    private List<Map.Entry<String, byte[]>> streamClass(ProcessingContext ctxt,
+                                                        ClassReference reference,
+                                                        ClassWrapper wrapper,
+                                                        List<? extends IClassTransformer> processors,
+                                                        long totalClasses,
+                                                        AtomicLong processed,
+                                                        AtomicLong reused,
+                                                        Set<? super String> reusedReferences) throws IOException
+    {
+        byte[] classBytes = wrapper.getOriginalClass();
+        if (this.buildCache != null)
+        {
+            String key = this.buildCache.computeKey(reference, classBytes, this.classPath::get);
+            this.buildKeys.put(reference, key);
+
+            CachedClass cached = this.buildCache.get(key);
+            if (cached != null)
+            {
+                reused.incrementAndGet();
+                ctxt.setTotalClassesProcessed(processed.incrementAndGet());
+                return this.reuseCachedOutputs(cached, reusedReferences);
+            }
+        }
 
-        Map<String, byte[]> toWrite = this.processClasses(this.classes);
-        finishOutJar(toWrite, outJar, stored);
+        ClassNode cn = toClassNode(classBytes);
+        return this.transformAndEncodeClass(ctxt, reference, cn, processors, totalClasses, processed);
+    }
+
+    /**
+     * クラスを変換し, そのまま同じスレッドでバイト列に書き出します.
+     * 変換で追加されたクラスも併せて書き出されます.
+     */
+    private List<Map.Entry<String, byte[]>> transformAndEncodeClass(ProcessingContext ctxt,
+                                                                    ClassReference reference,
+                                                                    ClassNode cn,
+                                                                    List<? extends IClassTransformer> processors,
+                                                                    long totalClasses,
+                                                                    AtomicLong processed)
+    {
+        ProcessorCallback callback = this.transformClass(ctxt, reference, cn, processors, totalClasses, processed);
+        if (callback == null)
+            return List.of(this.encodeClass(null, reference, cn, 0, totalClasses, processed));
+
+        List<Map.Entry<String, byte[]>> results = new ArrayList<>(1 + callback.getAdditionalClasses().size());
+        results.add(this.encodeClass(null, reference, cn, getComputeMode(callback), totalClasses, processed));
+        for (ClassNode additional : callback.getAdditionalClasses())
+            results.add(this.encodeClass(
+                    null,
+                    ClassReference.of(additional),
+                    additional,
+                    ADDITIONAL_CLASS_COMPUTE_MODE,
+                    totalClasses,
+                    processed
+            ));
+
+        return results;
     }
 
     private Map<String, byte[]> generatePackageDecrypter()
@@ -661,7 +979,7 @@ public class Obfuscator
         }};
     }
 
-    private void finishOutJar(Map<String, byte[]> classes, ZipOutputStream outJar, boolean stored) throws IOException
+    private void finishOutJar(Map<String, byte[]> classes, JarArchiveWriter outJar) throws IOException
     {
         log.info(Localisation.access("logs.obfuscation.transforming.writing_artifact")
                              .set("outputPath", this.config.getOutput())
@@ -669,17 +987,17 @@ public class Obfuscator
         );
         long startTime = System.currentTimeMillis();
 
-        this.writeClasses(outJar, classes, stored);
+        this.writeClasses(outJar, classes);
 
         log.info(Localisation.access("logs.task_finished")
                              .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
                              .get()
         );
 
-        this.writeResources(outJar, stored);
+        this.writeResources(outJar);
     }
 
-    private void writeClasses(ZipOutputStream outJar, Map<String, byte[]> classes, boolean stored) throws IOException
+    private void writeClasses(JarArchiveWriter outJar, Map<String, byte[]> classes) throws IOException
     {
         ClassesWritingContext ctxt = new ClassesWritingContext(this.status);
         ctxt.setTotalClassesToWrite(classes.size());
@@ -697,12 +1015,12 @@ public class Obfuscator
         for (Map.Entry<String, byte[]> stringEntry : toWrite.entrySet())
         {
             ctxt.setWritingClassName(stringEntry.getKey());
-            writeEntry(outJar, stringEntry.getKey(), stringEntry.getValue(), stored);
+            writeEntry(outJar, stringEntry.getKey(), stringEntry.getValue());
             ctxt.setTotalClassesWritten(++written);
         }
     }
 
-    private void writeResources(ZipOutputStream outJar, boolean stored) throws IOException
+    private void writeResources(JarArchiveWriter outJar) throws IOException
     {
         ResourcesWritingContext ctxt = new ResourcesWritingContext(this.status);
         ctxt.setTotalResourcesToWrite(this.files.size());
@@ -733,7 +1051,7 @@ public class Obfuscator
                 );
             }
 
-            writeEntry(outJar, entryName, entryData, stored);
+            writeEntry(outJar, entryName, entryData);
             ctxt.setTotalResourcesWritten(++written);
         }
 
@@ -762,14 +1080,119 @@ public class Obfuscator
                              .get()
         );
 
-        Map<ClassReference, ClassNode> transformed = this.transformClasses(ctxt, classes, this.processors, threadCount);
+        // キャッシュ・キーで引けるクラスは, 変換せずに前回の書き出し結果を再利用する
+        Map<String, CachedClass> cached = this.lookupBuildCache(classes);
+        Map<ClassReference, ClassNode> misses = new HashMap<>(classes);
+        Map<ClassReference, ClassNode> hits = new HashMap<>();
+        for (Map.Entry<ClassReference, ClassNode> classEntry : classes.entrySet())
+        {
+            String key = this.buildKeys.get(classEntry.getKey());
+            if (key != null && cached.containsKey(key))
+            {
+                misses.remove(classEntry.getKey());
+                hits.put(classEntry.getKey(), classEntry.getValue());
+            }
+        }
+
+        if (!this.isNameObfuscationEnabled() && !InvokeDynamic.isEnabled())
+        {
+            // 全クラスを見渡す処理が無いため, 変換と書き出しを 1 回の走査で行う
+            Map<String, byte[]> toWrite = this.transformAndEncodeClasses(ctxt, misses);
+            this.reuseCachedClasses(toWrite, cached.values(), Set.of());
+            log.info(Localisation.access("logs.task_finished")
+                                 .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
+                                 .get()
+            );
+
+            return toWrite;
+        }
+
+        // 変更されたクラスとその祖先は名前の対応が変わりうるため, それらを参照するクラスは再利用しない
+        Map<String, String> hitOwners = new HashMap<>();
+        Map<String, Set<String>> hitReferences = new HashMap<>();
+        if (!hits.isEmpty() && this.isNameObfuscationEnabled())
+        {
+            List<String> missNames = new ArrayList<>();
+            for (ClassReference miss : misses.keySet())
+                missNames.add(miss.getFullQualifiedName());
+            Set<String> changedHierarchy = this.collectHierarchy(missNames);
+
+            int demoted = 0;
+            for (Map.Entry<ClassReference, ClassNode> hit : new ArrayList<>(hits.entrySet()))
+            {
+                String key = this.buildKeys.get(hit.getKey());
+                Set<String> references = this.getReferencedHierarchy(hit.getKey());
+                if (Collections.disjoint(references, changedHierarchy))
+                {
+                    hitOwners.put(key, hit.getKey().getFullQualifiedName());
+                    hitReferences.put(key, references);
+                    continue;
+                }
+
+                hits.remove(hit.getKey());
+                misses.put(hit.getKey(), hit.getValue());
+                cached.remove(key);
+                demoted++;
+            }
+
+            if (demoted > 0)
+                log.info(Localisation.access("logs.obfuscation.incremental.demoted")
+                                     .set("classes", demoted)
+                                     .get()
+                );
+        }
+
+        Map<ClassReference, ClassNode> transformed = this.transformClasses(ctxt, misses, this.processors);
+
+        // 名前の難読化は全クラスを見渡す必要があるため, 再利用するクラスも（変換せずに）含める
+        transformed.putAll(hits);
+        Set<String> reusedOwners = new HashSet<>(hitOwners.values());
+
         this.processNameObfuscation(transformed);
 
+        if (!hits.isEmpty())
+        {
+            // 参照している名前が変わったクラスは, 前回の書き出し結果を使えない.
+            // 通常は上で除かれるため, 名前を変更した後に変換するのはまれな場合に限られる
+            Set<String> changedOwners = this.buildCache.getChangedOwners(reusedOwners);
+            Map<ClassReference, ClassNode> demoted = new HashMap<>();
+            Iterator<Map.Entry<ClassReference, ClassNode>> iterator = transformed.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<ClassReference, ClassNode> classEntry = iterator.next();
+                String key = this.buildKeys.get(classEntry.getKey());
+                if (key == null || !cached.containsKey(key))
+                    continue;
+
+                iterator.remove();
+                Set<String> references = hitReferences.get(key);
+                if (references != null && !Collections.disjoint(references, changedOwners))
+                {
+                    demoted.put(classEntry.getKey(), classEntry.getValue());
+                    cached.remove(key);
+                    reusedOwners.remove(hitOwners.get(key));
+                }
+            }
+
+            if (!demoted.isEmpty())
+            {
+                log.info(Localisation.access("logs.obfuscation.incremental.demoted")
+                                     .set("classes", demoted.size())
+                                     .get()
+                );
+                transformed.putAll(this.transformClasses(ctxt, demoted, this.processors));
+            }
+        }
+
         // InvokeDynamic を後から実行することで, NameObfuscationProcessor 後のクラス名変更に対応する
         if (InvokeDynamic.isEnabled())
-            transformed = this.transformClasses(ctxt, transformed, List.of(this.invokeDynamic), threadCount);
+        {
+            this.invokeDynamic.prepare(transformed.keySet());
+            transformed = this.transformClasses(ctxt, transformed, List.of(this.invokeDynamic));
+        }
 
-        Map<String, byte[]> toWrite = this.encodeClasses(transformed, threadCount);
+        Map<String, byte[]> toWrite = this.encodeClasses(transformed);
+        this.reuseCachedClasses(toWrite, cached.values(), reusedOwners);
         log.info(Localisation.access("logs.task_finished")
                              .set("time", Utils.formatTime(System.currentTimeMillis() - startTime))
                              .get()
@@ -778,6 +1201,292 @@ public class Obfuscator
         return toWrite;
     }
 
+    private Map<String, byte[]> transformAndEncodeClasses(ProcessingContext ctxt, Map<ClassReference, ClassNode> classes)
+    {
+        Map<String, byte[]> toWrite = new ConcurrentHashMap<>(classes.size());
+        AtomicLong processed = new AtomicLong(0);
+        this.scheduler.forEach(classes.entrySet(), classEntry -> {
+            ClassNode cn = classEntry.getValue();
+            for (Map.Entry<String, byte[]> encoded : this.transformAndEncodeClass(
+                    ctxt,
+                    classEntry.getKey(),
+                    cn,
+                    this.processors,
+                    classes.size(),
+                    processed
+            ))
+                toWrite.put(encoded.getKey(), encoded.getValue());
+
+            // 階層の解決にはシグネチャしか使われないため, 書き出し後はコードを解放する
+            releaseCode(cn);
+        });
+
+        return toWrite;
+    }
+
+    private static void releaseCode(ClassNode cn)
+    {
+        for (MethodNode method : cn.methods)
+        {
+            method.instructions = new InsnList();
+            if (method.tryCatchBlocks != null)
+                method.tryCatchBlocks.clear();
+            method.localVariables = null;
+        }
+    }
+
+    private boolean isNameObfuscationEnabled()
+    {
+        for (INameObfuscationProcessor processor : this.nameObfuscationProcessors)
+            if (processor.isEnabled())
+                return true;
+
+        return false;
+    }
+
+    /**
+     * 差分難読化が有効な場合に, ビルド・キャッシュを開きます.
+     */
+    private void openBuildCache()
+    {
+        if (!SETTINGS.getIncremental().get())
+            return;
+
+        // クラスを移動する処理は前回の名前を引き継げないため, 差分難読化できない
+        for (INameObfuscationProcessor processor : this.nameObfuscationProcessors)
+            if (processor.isEnabled() && !(processor instanceof NameObfuscation))
+            {
+                log.warn(Localisation.access("logs.obfuscation.incremental.fallback")
+                                     .set("processor", processor.getClass().getSimpleName())
+                                     .get()
+                );
+                return;
+            }
+
+        List<Object> processors = new ArrayList<>(this.processors);
+        processors.addAll(this.nameObfuscationProcessors);
+
+        this.buildCache = BuildCache.open(
+                this.getCacheDirectory().resolve("build"),
+                Paths.get(this.config.getInput()),
+                this.getBuildConfig(),
+                processors
+        );
+        this.nameProvider.restoreCounters(this.buildCache.getPreviousNameCounters());
+    }
+
+    /**
+     * 出力されるクラスに影響しない項目を取り除いた設定を返します.
+     */
+    private String getBuildConfig()
+    {
+        JsonObject json = JsonParser.parseString(ConfigManager.generateConfig(this.config, false)).getAsJsonObject();
+        json.remove("input");
+        json.remove("output");
+        json.remove("threads");
+
+        JsonObject general = json.getAsJsonObject("general");
+        if (general != null)
+            for (String name : List.of("Use_store", "streaming", "classpath_index", "lazy_classpath", "incremental", "cache_directory"))
+                general.remove(name);
+
+        return json + "\n" + JavaObfuscator.SHORT_VERSION;
+    }
+
+    /**
+     * 各クラスのキャッシュ・キーを求め, キャッシュされた書き出し結果を取得します.
+     *
+     * @return キャッシュ・キーと, キャッシュされた書き出し結果
+     */
+    private Map<String, CachedClass> lookupBuildCache(Map<ClassReference, ClassNode> classes)
+    {
+        Map<String, CachedClass> cached = new ConcurrentHashMap<>();
+        if (this.buildCache == null)
+            return cached;
+
+        this.scheduler.forEach(classes.keySet(), ref -> {
+            byte[] classBytes = this.getOriginalBytes(ref);
+            if (classBytes == null)
+                return;
+
+            String key = this.buildCache.computeKey(ref, classBytes, this.classPath::get);
+            this.buildKeys.put(ref, key);
+
+            CachedClass cachedClass = this.buildCache.get(key);
+            if (cachedClass != null)
+                cached.put(key, cachedClass);
+        });
+
+        log.info(Localisation.access("logs.obfuscation.incremental.hit")
+                             .set("hits", cached.size())
+                             .set("classes", classes.size())
+                             .get()
+        );
+
+        return cached;
+    }
+
+    private byte[] getOriginalBytes(ClassReference ref)
+    {
+        ClassWrapper wrapper = this.classPath.get(ref);
+        if (wrapper == null)
+            return null;
+
+        try
+        {
+            byte[] classBytes = wrapper.getOriginalClass();
+            return classBytes == null || classBytes.length == 0 ? null: classBytes;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * クラスが参照している入力クラスと, その祖先の内部名を求めます.
+     * 祖先で宣言されたメンバは, 祖先の名前の対応表に含まれるためです.
+     */
+    private Set<String> getReferencedHierarchy(ClassReference ref)
+    {
+        byte[] classBytes = this.getOriginalBytes(ref);
+        if (classBytes == null)
+            return new HashSet<>();
+
+        return this.collectHierarchy(BuildCache.getReferencedClasses(classBytes));
+    }
+
+    /**
+     * 入力クラスの内部名に, それらの祖先の内部名を加えたものを返します.
+     */
+    private Set<String> collectHierarchy(Collection<String> names)
+    {
+        Set<String> references = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>(names);
+        while (!queue.isEmpty())
+        {
+            String name = queue.removeFirst();
+            if (!references.add(name))
+                continue;
+
+            // ライブラリのクラスは名前が変わらない
+            ClassNode node = this.classes.get(ClassReference.of(name));
+            if (node == null)
+                continue;
+
+            if (node.superName != null)
+                queue.addLast(node.superName);
+            if (node.interfaces != null)
+                queue.addAll(node.interfaces);
+        }
+
+        return references;
+    }
+
+    /**
+     * キャッシュされた書き出し結果を出力に加え, 今回の結果をマニフェストに保存します.
+     */
+    private void reuseCachedClasses(Map<String, byte[]> toWrite,
+                                    Collection<CachedClass> cached,
+                                    Set<String> reusedOwners)
+    {
+        if (this.buildCache == null)
+            return;
+
+        Set<String> references = new HashSet<>();
+        for (CachedClass cachedClass : cached)
+            for (Map.Entry<String, byte[]> output : this.reuseCachedOutputs(cachedClass, references))
+                toWrite.put(output.getKey(), output.getValue());
+
+        for (Map.Entry<String, byte[]> carried : this.saveBuildCache(references, reusedOwners).entrySet())
+            toWrite.putIfAbsent(carried.getKey(), carried.getValue());
+    }
+
+    private List<Map.Entry<String, byte[]>> reuseCachedOutputs(CachedClass cached, Set<? super String> references)
+    {
+        references.addAll(cached.getDependencies());
+
+        List<Map.Entry<String, byte[]>> results = new ArrayList<>(cached.getOutputs().size());
+        for (Map.Entry<String, byte[]> output : cached.getOutputs().entrySet())
+        {
+            references.addAll(BuildCache.getReferencedClasses(output.getValue()));
+            results.add(this.applyPackager(output.getKey(), output.getValue()));
+        }
+
+        return results;
+    }
+
+    /**
+     * 今回の実行の結果をマニフェストに保存します.
+     * 再利用したクラスが参照している, 以前の実行で追加されたクラス（文字列の復号クラスなど）は, 今回生成されていなければ引き継ぎます.
+     *
+     * @param references   再利用したクラスが参照しているクラスの内部名
+     * @param reusedOwners 再利用したクラスの（元の）内部名
+     * @return 引き継いだ追加クラス（パッケージャ適用後）
+     */
+    private Map<String, byte[]> saveBuildCache(Set<String> references, Set<String> reusedOwners)
+    {
+        Map<String, byte[]> carried = new HashMap<>();
+        for (String name : references)
+        {
+            ClassReference ref = ClassReference.of(name);
+            if (this.classes.containsKey(ref))
+                continue;  // 今回の実行で生成されたか, 入力に含まれている
+
+            byte[] classBytes = this.buildCache.getAdditionalClass(ref.getFileNameFull());
+            if (classBytes == null)
+                continue;
+
+            Map.Entry<String, byte[]> packed = this.applyPackager(ref.getFileNameFull(), classBytes);
+            carried.put(packed.getKey(), packed.getValue());
+        }
+
+        this.buildCache.saveManifest(
+                this.buildCache.getMergedMappings(reusedOwners),
+                this.nameProvider.getCounters()
+        );
+
+        return carried;
+    }
+
+    /**
+     * 名前の難読化でクラスの名前が変わったことを通知します.
+     * クラスごとの情報は, 名前の難読化の処理が終わった後にまとめて新しい名前に移されます.
+     *
+     * @param from 変更前の名前
+     * @param to   変更後の名前
+     */
+    public void onClassRenamed(ClassReference from, ClassReference to)
+    {
+        if (!from.equals(to))
+            this.renamedClasses.put(from, to);
+    }
+
+    private void applyClassRenames()
+    {
+        // 名前が入れ替わる場合もあるため, 全て取り除いてから登録し直す
+        Map<ClassReference, Integer> modes = new HashMap<>();
+        Map<ClassReference, String> keys = new HashMap<>();
+        Set<String> additionalClasses = new HashSet<>();
+        this.renamedClasses.forEach((from, to) -> {
+            Integer mode = this.computeModes.remove(from);
+            if (mode != null)
+                modes.put(to, mode);
+
+            String key = this.buildKeys.remove(from);
+            if (key != null)
+                keys.put(to, key);
+
+            if (this.additionalClassNames.remove(from.getFullQualifiedName()))
+                additionalClasses.add(to.getFullQualifiedName());
+        });
+
+        this.computeModes.putAll(modes);
+        this.buildKeys.putAll(keys);
+        this.additionalClassNames.addAll(additionalClasses);
+        this.renamedClasses.clear();
+    }
+
     private void processNameObfuscation(
             Map<ClassReference, ClassNode> classes
     )
@@ -790,7 +1499,13 @@ public class Obfuscator
         );
 
         for (INameObfuscationProcessor nameObfuscationProcessor : this.nameObfuscationProcessors)
+        {
             nameObfuscationProcessor.transformPost(this, nameContext, classes);
+            this.applyClassRenames();
+        }
+
+        // クラス名が変わるため, 解決済みの階層は使えなくなる
+        this.hierarchyResolver.invalidate();
     }
 
     public void setMainClass(ClassReference newMainClass)
@@ -809,116 +1524,145 @@ public class Obfuscator
 
     private Map<ClassReference, ClassNode> transformClasses(ProcessingContext ctxt,
                                                             Map<ClassReference, ClassNode> classes,
-                                                            List<? extends IClassTransformer> processors,
-                                                            int threadCount)
+                                                            List<? extends IClassTransformer> processors)
     {
-        LinkedList<Map.Entry<ClassReference, ClassNode>> classQueue = new LinkedList<>(classes.entrySet());
+        Map<ClassReference, ClassNode> toWrite = new ConcurrentHashMap<>(classes.size());
         AtomicLong processed = new AtomicLong(0);
-        return ParallelExecutor.runInParallelAndMerge(threadCount, () -> () -> {
-            Map<ClassReference, ClassNode> toWriteThread = new HashMap<>();
+        this.scheduler.forEach(classes.entrySet(), classEntry -> {
+            ClassReference reference = classEntry.getKey();
+            ClassNode cn = classEntry.getValue();
+
+            ProcessorCallback callback = this.transformClass(
+                    ctxt,
+                    reference,
+                    cn,
+                    processors,
+                    classes.size(),
+                    processed
+            );
+            // 複数回変換される場合もあるため, 以前のフラグと合成する
+            this.computeModes.merge(reference, getComputeMode(callback), (a, b) -> a | b);
+
+            if (callback != null)
+                callback.getAdditionalClasses().forEach(classNode -> {
+                    ClassReference additionalRef = ClassReference.of(classNode);
+                    this.computeModes.put(additionalRef, ADDITIONAL_CLASS_COMPUTE_MODE);
+                    toWrite.put(additionalRef, classNode);
+                });
+            toWrite.put(reference, cn);
+        });
 
-            while (true)
-            {
-                Map.Entry<ClassReference, ClassNode> classEntry;
+        return toWrite;
+    }
 
-                synchronized (classQueue)
-                {
-                    classEntry = classQueue.poll();
-                }
+    /**
+     * クラスの書き出しに使うフラグを, 変換時のコールバックから決定します.
+     * 変換されなかったクラスは元のフレームと最大スタック・サイズがそのまま使えるため, 何も計算しません.
+     */
+    private static int getComputeMode(ProcessorCallback callback)
+    {
+        if (callback == null)
+            return 0;
+
+        return ModifiedClassWriter.COMPUTE_MAXS
+                | (callback.isForceComputeFrames() ? ModifiedClassWriter.COMPUTE_FRAMES: 0);
+    }
+
+    /**
+     * クラスを変換します.
+     *
+     * @return 変換時のコールバック. 除外されたなどの理由で変換されなかった場合は {@code null}
+     */
+    private ProcessorCallback transformClass(ProcessingContext ctxt,
+                                             ClassReference reference,
+                                             ClassNode cn,
+                                             List<? extends IClassTransformer> processors,
+                                             long totalClasses,
+                                             AtomicLong processed)
+    {
+        ProcessorCallback callback = new ProcessorCallback();
+        try
+        {
+            boolean isSkippedByScript = !(this.script == null || this.script.isObfuscatorEnabled(cn));
+            if (isSkippedByScript || this.isExcludedClass(cn.name)) {
+                log.info(Localisation.access("logs.obfuscation.transforming.skipped")
+                                     .set("proceedClasses", processed.get())
+                                     .set("totalClasses", totalClasses)
+                                     .set("entryName", reference)
+                                     .get());
+
+                ctxt.setTotalClassesProcessed(processed.incrementAndGet());
+                return null;
+            }
 
-                if (classEntry == null)
-                    break;
+            log.debug(Localisation.access("logs.obfuscation.transforming.processing")
+                                  .set("proceedClasses", processed.get())
+                                  .set("totalClasses", totalClasses)
+                                  .set("entryName", reference)
+                                  .get());
 
-                ProcessorCallback callback = new ProcessorCallback();
-                ClassReference reference = classEntry.getKey();
-                ClassNode cn = classEntry.getValue();
+            for (IClassTransformer proc : processors)
+            {
+                boolean shouldProcess = shouldProcess(cn, proc);
+                if (!shouldProcess) {
+                    log.info(Localisation.access("logs.obfuscation.transforming.skipped.annotation")
+                                         .set("proceedClasses", processed.get())
+                                         .set("totalClasses", totalClasses)
+                                         .set("entryName", reference)
+                                         .get());
+                    continue;
+                }
 
                 try
                 {
-                    this.computeMode = ModifiedClassWriter.COMPUTE_MAXS;
-
-                    boolean isSkippedByScript = !(this.script == null || this.script.isObfuscatorEnabled(cn));
-                    if (isSkippedByScript || this.isExcludedClass(cn.name)) {
-                        log.info(Localisation.access("logs.obfuscation.transforming.skipped")
-                                             .set("proceedClasses", processed.get())
-                                             .set("totalClasses", classes.size())
-                                             .set("entryName", reference)
-                                             .get());
-                    }
-
-                    log.debug(Localisation.access("logs.obfuscation.transforming.processing")
-                                          .set("proceedClasses", processed.get())
-                                          .set("totalClasses", classes.size())
-                                          .set("entryName", reference)
-                                          .get());
-
-                    for (IClassTransformer proc : processors)
-                    {
-                        boolean shouldProcess = shouldProcess(cn, proc);
-                        if (!shouldProcess) {
-                            log.info(Localisation.access("logs.obfuscation.transforming.skipped.annotation")
-                                                 .set("proceedClasses", processed.get())
-                                                 .set("totalClasses", classes.size())
-                                                 .set("entryName", reference)
-                                                 .get());
-                            continue;
-                        }
-
-                        try
-                        {
-                            ctxt.setProcessingClassName(reference.getFileNameFull());
-                            proc.process(callback, cn);
-                        }
-                        catch (Exception e)
-                        {
-                            log.error(Localisation.access("logs.obfuscation.transforming.error")
-                                                  .set("proceedClasses", processed.get())
-                                                  .set("totalClasses", classes.size())
-                                                  .set("entryName", reference)
-                                                  .get(), e);
-                            throw e;
-                        }
-                    }
-
-                    if (callback.isForceComputeFrames())
-                        cn.methods.forEach(method -> Arrays.stream(method.instructions.toArray())
-                                                           .filter(insn -> insn instanceof FrameNode)
-                                                           .forEach(insn -> method.instructions.remove(insn)));
-
-                    this.computeMode = this.computeMode | (callback.isForceComputeFrames() ? ModifiedClassWriter.COMPUTE_FRAMES : 0);
-
-                    removeObfuscateRuleAnnotations(cn);
-
-                    if (!callback.getAdditionalClasses().isEmpty())
-                        callback.getAdditionalClasses().forEach(
-                                classNode -> {
-                                    ClassReference classRef = ClassReference.of(classNode);
-                                    toWriteThread.put(classRef, classNode);
-                                    this.classPath.put(classRef, new ClassWrapper(classNode, false, null));
-                                    this.classes.put(classRef, classNode);
-                                }
-                        );
-
-                    toWriteThread.put(reference, cn);
-                    ctxt.setTotalClassesProcessed(processed.incrementAndGet());
-                } catch (Exception e) {
+                    ctxt.setProcessingClassName(reference.getFileNameFull());
+                    proc.process(callback, cn);
+                }
+                catch (Exception e)
+                {
                     log.error(Localisation.access("logs.obfuscation.transforming.error")
-                                          .set("threadName", Thread.currentThread().getName())
                                           .set("proceedClasses", processed.get())
-                                          .set("totalClasses", classes.size())
+                                          .set("totalClasses", totalClasses)
                                           .set("entryName", reference)
                                           .get(), e);
-
-                    JavaObfuscator.setLastException(e);
                     throw e;
                 }
             }
 
-            return toWriteThread;
-        });
+            if (callback.isForceComputeFrames())
+                cn.methods.forEach(method -> Arrays.stream(method.instructions.toArray())
+                                                   .filter(insn -> insn instanceof FrameNode)
+                                                   .forEach(insn -> method.instructions.remove(insn)));
+
+            removeObfuscateRuleAnnotations(cn);
+
+            if (!callback.getAdditionalClasses().isEmpty())
+                callback.getAdditionalClasses().forEach(
+                        classNode -> {
+                            ClassReference classRef = ClassReference.of(classNode);
+                            this.classPath.put(classRef, new ClassWrapper(classNode, false, null));
+                            this.classes.put(classRef, classNode);
+                            this.additionalClassNames.add(classRef.getFullQualifiedName());
+                        }
+                );
+
+            ctxt.setTotalClassesProcessed(processed.incrementAndGet());
+        } catch (Exception e) {
+            log.error(Localisation.access("logs.obfuscation.transforming.error")
+                                  .set("threadName", Thread.currentThread().getName())
+                                  .set("proceedClasses", processed.get())
+                                  .set("totalClasses", totalClasses)
+                                  .set("entryName", reference)
+                                  .get(), e);
+
+            JavaObfuscator.setLastException(e);
+            throw e;
+        }
+
+        return callback;
     }
 
-    private Map<String, byte[]> encodeClasses(Map<ClassReference, ClassNode> classes, int threadCount)
+    private Map<String, byte[]> encodeClasses(Map<ClassReference, ClassNode> classes)
     {
         EncodingContext ctxt = new EncodingContext(this.status);
         ctxt.setTotalClassesToEncode(classes.size());
@@ -927,105 +1671,140 @@ public class Obfuscator
                 ctxt
         );
 
-        LinkedList<Map.Entry<ClassReference, ClassNode>> classQueue = new LinkedList<>(classes.entrySet());
-
+        Map<String, byte[]> toWrite = new ConcurrentHashMap<>(classes.size());
         AtomicLong processed = new AtomicLong(0);
-        return ParallelExecutor.runInParallelAndMerge(this.config.getNThreads(), () -> () -> {
-            Map<String, byte[]> toWriteThread = new HashMap<>();
-            while (true)
-            {
-                Map.Entry<ClassReference, ClassNode> stringClassNodeEntry;
+        this.scheduler.forEach(classes.entrySet(), classEntry -> {
+            Map.Entry<String, byte[]> encoded = this.encodeClass(
+                    ctxt,
+                    classEntry.getKey(),
+                    classEntry.getValue(),
+                    this.computeModes.getOrDefault(classEntry.getKey(), ModifiedClassWriter.COMPUTE_MAXS),
+                    classes.size(),
+                    processed
+            );
+            toWrite.put(encoded.getKey(), encoded.getValue());
 
-                synchronized (classQueue)
-                {
-                    stringClassNodeEntry = classQueue.poll();
-                }
+            ctxt.setTotalClassesEncoded(processed.incrementAndGet());
+        });
+
+        return toWrite;
+    }
 
-                if (stringClassNodeEntry == null)
-                    break;
+    private Map.Entry<String, byte[]> encodeClass(EncodingContext ctxt,
+                                                  ClassReference entryName,
+                                                  ClassNode cn,
+                                                  int mode,
+                                                  long totalClasses,
+                                                  AtomicLong processed)
+    {
+        String writePath = entryName.getFileNameFull();
 
-                ClassReference entryName = stringClassNodeEntry.getKey();
-                String writePath = entryName.getFileNameFull();
+        byte[] entryData;
+        boolean isPackagerClassDecrypter =
+                this.packager.isEnabled() && this.packager.isPackagerClassDecrypter(cn);
 
-                byte[] entryData;
-                ClassNode cn = stringClassNodeEntry.getValue();
-                boolean isPackagerClassDecrypter =
-                        this.packager.isEnabled() && this.packager.isPackagerClassDecrypter(cn);
+        try
+        {
+            log.debug(Localisation.access("logs.obfuscation.transforming.writing")
+                                  .set("proceedClasses", processed.get())
+                                  .set("totalClasses", totalClasses)
+                                  .set("entryName", entryName)
+                                  .set("computingMode", mode)
+                                  .get()
+            );
 
-                try
-                {
-                    int mode = this.computeMode;
-                    log.debug(Localisation.access("logs.obfuscation.transforming.writing")
-                                          .set("proceedClasses", processed.get())
-                                          .set("totalClasses", classes.size())
-                                          .set("entryName", entryName)
-                                          .set("computingMode", mode)
-                                          .get()
-                    );
+            removeObfuscateRuleAnnotations(cn);
 
-                    removeObfuscateRuleAnnotations(cn);
+            if (ctxt != null)
+                ctxt.setEncodingClassName(writePath);
+            ModifiedClassWriter writer = this.createClassWriter(entryName, mode);
+            cn.accept(writer);
 
-                    ctxt.setEncodingClassName(writePath);
-                    ModifiedClassWriter writer = new ModifiedClassWriter(
-                            mode
-//                                            ModifiedClassWriter.COMPUTE_MAXS |
-//                                            ModifiedClassWriter.COMPUTE_FRAMES
-                    );
-                    cn.accept(writer);
+            entryData = writer.toByteArray();
 
-                    entryData = writer.toByteArray();
+            // キャッシュにはパッケージャを適用する前のものを保存する
+            if (this.buildCache != null)
+            {
+                String key = this.buildKeys.get(entryName);
+                if (key == null)
+                    this.buildCache.putAdditionalClass(writePath, entryData);
+                else
+                    this.buildCache.put(key, Map.of(writePath, entryData), this.getCacheDependencies());
+            }
 
-                    if (this.packager.isEnabled() && !isPackagerClassDecrypter)
-                    {
-                        writePath = this.packager.encryptName(writePath);
-                        entryData = this.packager.encryptClass(entryData);
-                    }
-                }
-                catch (Exception e)
-                {
-                    log.error(
-                            Localisation.access("logs.obfuscation.transforming.error")
-                                        .set("threadName", Thread.currentThread().getName())
-                                        .set("proceedClasses", processed.get())
-                                        .set("totalClasses", classes.size())
-                                        .set("entryName", entryName)
-                                        .get(),
-                            e
-                    );
+            if (!isPackagerClassDecrypter)
+                return this.applyPackager(writePath, entryData);
+        }
+        catch (Exception e)
+        {
+            log.error(
+                    Localisation.access("logs.obfuscation.transforming.error")
+                                .set("threadName", Thread.currentThread().getName())
+                                .set("proceedClasses", processed.get())
+                                .set("totalClasses", totalClasses)
+                                .set("entryName", entryName)
+                                .get(),
+                    e
+            );
 
-                    throw e;
-                }
+            throw e;
+        }
 
-                toWriteThread.put(writePath, entryData);
+        return Map.entry(writePath, entryData);
+    }
 
-                ctxt.setTotalClassesEncoded(processed.incrementAndGet());
-            }
+    /**
+     * キャッシュに保存するクラスが必要とする, 変換で追加されたクラスを返します.
+     * 通常は再利用するときに定数プールから分かりますが, InvokeDynamic はそれを隠すため, 今回追加されたクラスを全て記録します.
+     */
+    private Set<String> getCacheDependencies()
+    {
+        if (!InvokeDynamic.isEnabled())
+            return Set.of();
 
-            return toWriteThread;
-        });
+        return Set.copyOf(this.additionalClassNames);
     }
 
-    public void writeEntry(ZipOutputStream outJar, String inJarPath, byte[] value, boolean stored) throws IOException
+    private Map.Entry<String, byte[]> applyPackager(String writePath, byte[] entryData)
     {
-        ZipEntry newEntry = new ZipEntry(inJarPath);
+        if (!this.packager.isEnabled())
+            return Map.entry(writePath, entryData);
 
-        log.debug(Localisation.access("logs.obfuscation.copying_entry")
-                              .set("entryName", inJarPath)
-                              .get()
-        );
+        return Map.entry(this.packager.encryptName(writePath), this.packager.encryptClass(entryData));
+    }
 
-        if (stored)
-        {
-            CRC32 crc = new CRC32();
-            crc.update(value, 0, value.length);
+    private ModifiedClassWriter createClassWriter(ClassReference ref, int mode)
+    {
+        if (mode != 0)
+            return new ModifiedClassWriter(mode);
 
-            newEntry.setSize(value.length);
-            newEntry.setCrc(crc.getValue());
+        // 変換されていないクラスは, 元のクラスの定数プールをそのまま引き継ぐ
+        ClassWrapper wrapper = this.classPath.get(ref);
+        if (wrapper == null || !ref.equals(wrapper.originalRef))
+            return new ModifiedClassWriter(0);
+
+        try
+        {
+            byte[] original = wrapper.getOriginalClass();
+            if (original != null)
+                return new ModifiedClassWriter(new ClassReader(original), 0);
+        }
+        catch (IOException ignored)
+        {
+            // 定数プールを引き継がなくても, 書き出しには影響しない
         }
 
+        return new ModifiedClassWriter(0);
+    }
+
+    public void writeEntry(JarArchiveWriter outJar, String inJarPath, byte[] value) throws IOException
+    {
+        log.debug(Localisation.access("logs.obfuscation.copying_entry")
+                              .set("entryName", inJarPath)
+                              .get()
+        );
 
-        outJar.putNextEntry(newEntry);
-        outJar.write(value);
+        outJar.write(inJarPath, value);
     }
 
     private boolean shouldProcess(ClassNode node, IClassTransformer processor)
@@ -1149,39 +1928,12 @@ public class Obfuscator
         return mainClassNode;
     }
 
-    private static List<Pattern> compileExcludePatterns()
-    {
-        List<Pattern> result = new ArrayList<>();
-        for (String s : SETTINGS.getExcludedClasses().get().split("\n"))
-            result.add(ExcludePattern.compileExcludePattern(s));
-
-        return result;
-    }
-
-    private static ZipInputStream getInJarStream(String inputJarPath) throws FileNotFoundException
-    {
-        try
-        {
-            return new ZipInputStream(new BufferedInputStream(new FileInputStream(inputJarPath)));
-        }
-        catch (FileNotFoundException e)
-        {
-            throw new FileNotFoundException("Could not open input file: " + e.getMessage());
-        }
-    }
-
-    private static ZipOutputStream getOutJarStream(String outputJarPath, boolean stored) throws FileNotFoundException
+    private JarArchiveWriter getOutJarStream(String outputJarPath, boolean stored) throws FileNotFoundException
     {
         try
         {
             OutputStream out = outputJarPath == null ? new ByteArrayOutputStream(): new FileOutputStream(outputJarPath);
-            ZipOutputStream outJar = new ZipOutputStream(new BufferedOutputStream(out));
-            outJar.setMethod(stored ? ZipOutputStream.STORED: ZipOutputStream.DEFLATED);
-
-            if (stored)
-                outJar.setLevel(Deflater.NO_COMPRESSION);
-
-            return outJar;
+            return new JarArchiveWriter(out, stored, this.scheduler.getExecutor(), this.config.getNThreads());
         }
         catch (FileNotFoundException e)
         {
@@ -13,6 +13,8 @@ package tokyo.peya.obfuscator;
 
 import com.google.common.io.Files;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodNode;
 import tokyo.peya.obfuscator.utils.Utils;
 
@@ -20,9 +22,16 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class UniqueNameProvider
@@ -30,15 +39,17 @@ public class UniqueNameProvider
 
     private final String generativeChars;
     private final boolean usingCustomDictionary;
-    private final HashMap<String, Integer> packageMap;
+    private final Map<String, Integer> packageMap;
     private final Map<String, HashMap<String, Integer>> usedMethods;
     private final Map<String, Integer> usedFields;
     private final List<String> classNames;
     private final List<String> names;
+    private final Map<ClassNode, MemberIndex<MethodNode>> methodIndices;
+    private final Map<ClassNode, MemberIndex<FieldNode>> fieldIndices;
+    private final Map<MethodNode, MemberIndex<LocalVariableNode>> localVariableIndices;
 
-    private int localVars;
-    private int methods;
-    private int fields;
+    private final AtomicInteger methods;
+    private final AtomicInteger fields;
 
     public UniqueNameProvider(GeneralSettings settings)
     {
@@ -49,7 +60,12 @@ public class UniqueNameProvider
 
         this.usedFields = new HashMap<>();
         this.usedMethods = new HashMap<>();
-        this.packageMap = new HashMap<>();
+        this.packageMap = new ConcurrentHashMap<>();
+        this.methods = new AtomicInteger();
+        this.fields = new AtomicInteger();
+        this.methodIndices = Collections.synchronizedMap(new WeakHashMap<>());
+        this.fieldIndices = Collections.synchronizedMap(new WeakHashMap<>());
+        this.localVariableIndices = Collections.synchronizedMap(new WeakHashMap<>());
 
         if (!this.usingCustomDictionary)
         {
@@ -79,11 +95,7 @@ public class UniqueNameProvider
 
     public String generateClassName(String packageName)
     {
-        if (!this.packageMap.containsKey(packageName))
-            this.packageMap.put(packageName, 0);
-
-        int id = this.packageMap.get(packageName);
-        this.packageMap.put(packageName, id + 1);
+        int id = this.packageMap.merge(packageName, 1, Integer::sum) - 1;
 
         return getName(this.classNames, id);
     }
@@ -96,48 +108,126 @@ public class UniqueNameProvider
         return Utils.convertToBase(id, this.generativeChars);
     }
 
+    /**
+     * クラス内で一意なメソッド名を生成します.
+     * 名前の連番はクラスごとに独立しているため, 複数のスレッドから同時に呼び出しても,
+     * 同じクラスに対する呼び出しの順序が同じであれば, 同じ名前が生成されます.
+     *
+     * @param classNode メソッドを追加するクラス
+     * @param desc      メソッドのディスクリプタ
+     * @return 生成された名前
+     */
     public String generateMethodName(final ClassNode classNode, String desc)
     {
-        return this.toUniqueMethodName(classNode, getName(this.names, this.methods++), desc);
+        MemberIndex<MethodNode> index = this.getMethodIndex(classNode);
+        synchronized (index)
+        {
+            return this.toUniqueMethodName(classNode, getName(this.names, index.nextId++), desc);
+        }
     }
 
+    /**
+     * クラス内で一意なフィールド名を生成します.
+     * 名前の連番はクラスごとに独立しています.
+     *
+     * @param classNode フィールドを追加するクラス
+     * @return 生成された名前
+     * @see #generateMethodName(ClassNode, String)
+     */
     public String generateFieldName(final ClassNode classNode)
     {
-        return toUniqueFieldName(classNode, getName(this.names, this.fields++));
+        MemberIndex<FieldNode> index = this.getFieldIndex(classNode);
+        synchronized (index)
+        {
+            return this.toUniqueFieldName(classNode, getName(this.names, index.nextId++));
+        }
+    }
+
+    /**
+     * 全クラスで共有する連番から, メソッド名を生成します.
+     * 継承関係にあるクラスどうしで名前が重ならないようにする必要がある, 名前の難読化で使用します.
+     *
+     * @param classNode メソッドを持つクラス
+     * @param desc      メソッドのディスクリプタ
+     * @return 生成された名前
+     */
+    public String generateSharedMethodName(final ClassNode classNode, String desc)
+    {
+        return this.toUniqueMethodName(classNode, getName(this.names, this.methods.getAndIncrement()), desc);
+    }
+
+    /**
+     * 全クラスで共有する連番から, フィールド名を生成します.
+     *
+     * @param classNode フィールドを持つクラス
+     * @return 生成された名前
+     * @see #generateSharedMethodName(ClassNode, String)
+     */
+    public String generateSharedFieldName(final ClassNode classNode)
+    {
+        return this.toUniqueFieldName(classNode, getName(this.names, this.fields.getAndIncrement()));
     }
 
     public String generateLocalVariableName(MethodNode node)
     {
-        if (this.localVars == 0)
-            this.localVars = Short.MAX_VALUE;
-        return this.toUniqueLocalVariableName(node, getName(this.names, this.localVars--));
+        MemberIndex<LocalVariableNode> index = this.getLocalVariableIndex(node);
+        synchronized (index)
+        {
+            if (index.nextId <= 0)
+                index.nextId = Short.MAX_VALUE;
+            return this.toUniqueLocalVariableName(node, getName(this.names, index.nextId--));
+        }
+    }
+
+    private MemberIndex<MethodNode> getMethodIndex(ClassNode classNode)
+    {
+        return this.methodIndices.computeIfAbsent(classNode, k -> new MemberIndex<>(m -> m.name + m.desc));
+    }
+
+    private MemberIndex<FieldNode> getFieldIndex(ClassNode classNode)
+    {
+        return this.fieldIndices.computeIfAbsent(classNode, k -> new MemberIndex<>(f -> f.name));
+    }
+
+    private MemberIndex<LocalVariableNode> getLocalVariableIndex(MethodNode method)
+    {
+        return this.localVariableIndices.computeIfAbsent(method, k -> new MemberIndex<>(lv -> lv.name));
     }
 
     public String toUniqueMethodName(ClassNode method, String nameCandidate, String desc)
     {
-        return generateUniqueName(
-                nameCandidate,
-                s -> method.methods.stream()
-                                   .anyMatch(m -> m.name.equals(s) && m.desc.equals(desc))
-        );
+        MemberIndex<MethodNode> index = this.getMethodIndex(method);
+        synchronized (index)
+        {
+            index.sync(method.methods);
+            String name = generateUniqueName(nameCandidate, s -> index.contains(s + desc));
+            index.reserve(name + desc);
+            return name;
+        }
     }
 
     public String toUniqueFieldName(ClassNode method, String nameCandidate)
     {
-        return generateUniqueName(
-                nameCandidate,
-                s -> method.fields.stream()
-                                  .anyMatch(f -> f.name.equals(s))
-        );
+        MemberIndex<FieldNode> index = this.getFieldIndex(method);
+        synchronized (index)
+        {
+            index.sync(method.fields);
+            String name = generateUniqueName(nameCandidate, index::contains);
+            index.reserve(name);
+            return name;
+        }
     }
 
     public String toUniqueLocalVariableName(MethodNode method, String nameCandidate)
     {
-        return generateUniqueName(
-                nameCandidate,
-                s -> method.localVariables != null && method.localVariables.stream()
-                                              .anyMatch(lv -> lv.name.equals(s))
-        );
+        MemberIndex<LocalVariableNode> index = this.getLocalVariableIndex(method);
+        synchronized (index)
+        {
+            index.sync(method.localVariables);
+            String name = generateUniqueName(nameCandidate, index::contains);
+            index.reserve(name);
+            return name;
+        }
     }
 
     public void mapClass(String old, String newName)
@@ -148,6 +238,39 @@ public class UniqueNameProvider
             this.usedFields.put(newName, this.usedFields.get(old));
     }
 
+    /**
+     * 名前の生成に使ったカウンタの値を返します.
+     *
+     * @return カウンタの名前と値
+     */
+    public Map<String, Integer> getCounters()
+    {
+        Map<String, Integer> counters = new HashMap<>();
+        counters.put("methods", this.methods.get());
+        counters.put("fields", this.fields.get());
+        this.packageMap.forEach((packageName, id) -> counters.put("package:" + packageName, id));
+
+        return counters;
+    }
+
+    /**
+     * 以前に使ったカウンタの値を復元し, 以前に生成した名前と重複しないようにします.
+     * 現在の値の方が大きいカウンタはそのまま維持されます.
+     *
+     * @param counters {@link #getCounters()} で取得したカウンタの名前と値
+     */
+    public void restoreCounters(Map<String, Integer> counters)
+    {
+        counters.forEach((name, value) -> {
+            if (name.equals("methods"))
+                this.methods.accumulateAndGet(value, Math::max);
+            else if (name.equals("fields"))
+                this.fields.accumulateAndGet(value, Math::max);
+            else if (name.startsWith("package:"))
+                this.packageMap.merge(name.substring("package:".length()), value, Math::max);
+        });
+    }
+
     private static void normalizeSettings(GeneralSettings settings)
     {
         if (settings.getGeneratorChars().get().isEmpty())
@@ -171,4 +294,58 @@ public class UniqueNameProvider
 
         return name;
     }
+
+    /**
+     * クラスやメソッドが持つメンバの名前の索引です.
+     * 変換器はメンバをリストの末尾に追加するため, 前回からの増加分だけを索引に加えます.
+     * リストが差し替えられたり縮んだりした場合は, 索引を作り直します.
+     * <p>
+     * 一度払い出した名前は, メンバが追加される前でも使用済みとして扱います.
+     * その場で名前が書き換えられたメンバの古い名前は残りますが, 名前が重複することはありません.
+     * また, このクラスやメソッドで名前の生成に使う連番も保持します.
+     *
+     * @param <T> メンバの型
+     */
+    private static final class MemberIndex<T>
+    {
+        private final Function<? super T, String> keyFunction;
+        private final Set<String> keys;
+
+        private List<T> members;
+        private int indexed;
+        private int nextId;
+
+        private MemberIndex(Function<? super T, String> keyFunction)
+        {
+            this.keyFunction = keyFunction;
+            this.keys = new HashSet<>();
+        }
+
+        private void sync(List<T> current)
+        {
+            if (current != this.members || current != null && current.size() < this.indexed)
+            {
+                this.members = current;
+                this.indexed = 0;
+                this.keys.clear();
+            }
+
+            if (current == null)
+                return;
+
+            for (int i = this.indexed; i < current.size(); i++)
+                this.keys.add(this.keyFunction.apply(current.get(i)));
+            this.indexed = current.size();
+        }
+
+        private boolean contains(String key)
+        {
+            return this.keys.contains(key);
+        }
+
+        private void reserve(String key)
+        {
+            this.keys.add(key);
+        }
+    }
 }
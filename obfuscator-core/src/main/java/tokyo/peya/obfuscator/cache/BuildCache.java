@@ -0,0 +1,629 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.cache;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import tokyo.peya.obfuscator.Localisation;
+import tokyo.peya.obfuscator.clazz.ClassReference;
+import tokyo.peya.obfuscator.clazz.ClassWrapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 差分難読化のための, 内容アドレス方式のビルド・キャッシュ.
+ * <p>
+ * クラスごとのキーは, 入力クラスのバイト列, 設定, 変換器の一覧, およびクラスの継承階層（祖先クラスの名前と内容）から求められ,
+ * 書き出し済みのクラス（パッケージャによる暗号化前のもの）がキーごとに保存されます.
+ * 変換で追加されたクラス（文字列の復号クラスなど）は, 設定と書き出し後のパスをキーに保存されます.
+ * また, 入力ファイルと設定ごとのマニフェストに名前の対応表と名前の生成に使ったカウンタを保存し,
+ * 次回の実行で変更されていないクラスと変更されたクラスの名前が一致するようにします.
+ * <pre>
+ * objects/xx/&lt;key&gt;.bin:  int magic, int version, int count, { UTF name, int length, byte[length] }...,
+ *                         int count, { UTF dependency }...
+ * manifests/&lt;input&gt;.bin: int magic, int version, UTF session,
+ *                         int count, { UTF original, UTF mapped }...,
+ *                         int count, { UTF counter, int value }...
+ * </pre>
+ */
+@Slf4j(topic = "BuildCache")
+public class BuildCache
+{
+    private static final int MAGIC = 0x4A4F4243;  // JOBC
+    private static final int VERSION = 1;
+
+    private final Path objectsDirectory;
+    private final Path manifestFile;
+    private final String session;
+    private final Map<ClassReference, String> contentDigests;
+
+    /**
+     * 前回の実行での名前の対応表. キーの形式は NameObfuscation の対応表と同じ.
+     */
+    @Getter
+    private final Map<String, String> previousMappings;
+    /**
+     * 前回の実行で, 名前の生成に使ったカウンタの値.
+     */
+    @Getter
+    private final Map<String, Integer> previousNameCounters;
+    /**
+     * 今回の実行での名前の対応表.
+     */
+    @Getter
+    private final Map<String, String> mappings;
+
+    private BuildCache(Path directory, Path input, String session)
+    {
+        this.objectsDirectory = directory.resolve("objects");
+        this.manifestFile = directory.resolve("manifests")
+                                     .resolve(sha256(input.toAbsolutePath() + "\n" + session) + ".bin");
+        this.session = session;
+        this.contentDigests = new ConcurrentHashMap<>();
+        this.previousMappings = new HashMap<>();
+        this.previousNameCounters = new HashMap<>();
+        this.mappings = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * キャッシュを開きます.
+     *
+     * @param directory  キャッシュを保存するディレクトリ
+     * @param input      入力ファイル
+     * @param config     出力に影響する設定を直列化したもの
+     * @param processors 変換器の一覧
+     * @return キャッシュ
+     */
+    public static BuildCache open(Path directory, Path input, String config, List<?> processors)
+    {
+        StringBuilder session = new StringBuilder(config);
+        for (Object processor : processors)
+            session.append('\n').append(processor.getClass().getName());
+
+        BuildCache cache = new BuildCache(directory, input, sha256(session.toString()));
+        try
+        {
+            cache.readManifest();
+        }
+        catch (IOException e)
+        {
+            log.warn(Localisation.access("logs.obfuscation.incremental.manifest.read_fail")
+                                 .set("filePath", cache.manifestFile)
+                                 .get(), e
+            );
+            cache.previousMappings.clear();
+            cache.previousNameCounters.clear();
+        }
+
+        return cache;
+    }
+
+    /**
+     * クラスのキャッシュ・キーを求めます.
+     *
+     * @param ref        クラス
+     * @param classBytes 入力クラスのバイト列
+     * @param lookup     クラスパスからクラスを探す関数
+     * @return キャッシュ・キー
+     */
+    public String computeKey(ClassReference ref, byte[] classBytes, Function<? super ClassReference, ? extends ClassWrapper> lookup)
+    {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(this.session, StandardCharsets.UTF_8);
+        hasher.putInt(classBytes.length);
+        hasher.putBytes(classBytes);
+
+        // 継承階層: 祖先クラスの名前と, 入力クラスであればその内容
+        ClassWrapper self = lookup.apply(ref);
+        if (self == null)
+            return hasher.hash().toString();
+
+        Deque<String> queue = new ArrayDeque<>(getParents(self));
+        Set<String> visited = new HashSet<>(queue);
+        while (!queue.isEmpty())
+        {
+            ClassReference ancestorRef = ClassReference.of(queue.removeFirst());
+            ClassWrapper ancestor = lookup.apply(ancestorRef);
+
+            hasher.putString(ancestorRef.getFullQualifiedName(), StandardCharsets.UTF_8);
+            hasher.putString(this.getContentDigest(ancestorRef, ancestor), StandardCharsets.UTF_8);
+            if (ancestor == null)
+                continue;
+
+            for (String parent : getParents(ancestor))
+                if (visited.add(parent))
+                    queue.addLast(parent);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private String getContentDigest(ClassReference ref, ClassWrapper wrapper)
+    {
+        if (wrapper == null)
+            return "?";
+        else if (wrapper.libraryNode)
+            return "L";
+
+        return this.contentDigests.computeIfAbsent(ref, r -> {
+            try
+            {
+                byte[] bytes = wrapper.getOriginalClass();
+                return bytes == null ? "?": Hashing.sha256().hashBytes(bytes).toString();
+            }
+            catch (IOException e)
+            {
+                return "?";
+            }
+        });
+    }
+
+    private static List<String> getParents(ClassWrapper wrapper)
+    {
+        List<String> parents = new ArrayList<>();
+        if (wrapper.classNode.superName != null)
+            parents.add(wrapper.classNode.superName);
+        if (wrapper.classNode.interfaces != null)
+            parents.addAll(wrapper.classNode.interfaces);
+
+        return parents;
+    }
+
+    /**
+     * キャッシュされた書き出し結果を取得します.
+     *
+     * @param key キャッシュ・キー
+     * @return 書き出し結果. 存在しないか壊れている場合は {@code null}
+     */
+    public CachedClass get(String key)
+    {
+        return readObject(this.getObjectFile(key));
+    }
+
+    /**
+     * 書き出し結果を保存します. 失敗してもキャッシュされないだけで, 難読化には影響しません.
+     *
+     * @param key          キャッシュ・キー
+     * @param outputs      書き出し結果（パスとバイト列）
+     * @param dependencies 書き出し結果が必要とする, 変換で追加されたクラスの内部名
+     */
+    public void put(String key, Map<String, byte[]> outputs, Set<String> dependencies)
+    {
+        writeObject(this.getObjectFile(key), new CachedClass(outputs, dependencies));
+    }
+
+    /**
+     * 変換で追加されたクラスを取得します.
+     *
+     * @param path 書き出し後のパス
+     * @return クラスのバイト列. 存在しない場合は {@code null}
+     */
+    public byte[] getAdditionalClass(String path)
+    {
+        CachedClass cached = readObject(this.getAdditionalClassFile(path));
+        return cached == null ? null: cached.getOutputs().get(path);
+    }
+
+    /**
+     * 変換で追加されたクラスを保存します.
+     * 変換で追加されたクラスは, それを参照するクラスをキャッシュから再利用するときに, 併せて出力されます.
+     *
+     * @param path       書き出し後のパス
+     * @param classBytes クラスのバイト列
+     */
+    public void putAdditionalClass(String path, byte[] classBytes)
+    {
+        writeObject(this.getAdditionalClassFile(path), new CachedClass(Map.of(path, classBytes), Set.of()));
+    }
+
+    private static CachedClass readObject(Path file)
+    {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        // 壊れた数や長さを残りのバイト数と比べられるよう, 全体を読み込む
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            Map<String, byte[]> outputs = readEntries(in);
+
+            int count = readCount(in, Short.BYTES);
+            Set<String> dependencies = new HashSet<>(count);
+            for (int i = 0; i < count; i++)
+                dependencies.add(in.readUTF());
+
+            return new CachedClass(outputs, dependencies);
+        }
+        catch (IOException e)
+        {
+            log.debug("Ignoring a broken cache entry " + file, e);
+            return null;
+        }
+    }
+
+    private static void writeObject(Path file, CachedClass cached)
+    {
+        try
+        {
+            writeAtomically(file, out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeEntries(out, cached.getOutputs());
+
+                out.writeInt(cached.getDependencies().size());
+                for (String dependency : cached.getDependencies())
+                    out.writeUTF(dependency);
+            });
+        }
+        catch (IOException e)
+        {
+            log.warn(Localisation.access("logs.obfuscation.incremental.write_fail")
+                                 .set("filePath", file)
+                                 .get(), e
+            );
+        }
+    }
+
+    /**
+     * 今回の実行の結果をマニフェストに保存します.
+     *
+     * @param mappings     名前の対応表
+     * @param nameCounters 名前の生成に使ったカウンタの値
+     */
+    public void saveManifest(Map<String, String> mappings, Map<String, Integer> nameCounters)
+    {
+        try
+        {
+            writeAtomically(this.manifestFile, out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(this.session);
+
+                out.writeInt(mappings.size());
+                for (Map.Entry<String, String> entry : mappings.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+
+                out.writeInt(nameCounters.size());
+                for (Map.Entry<String, Integer> entry : nameCounters.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            log.warn(Localisation.access("logs.obfuscation.incremental.write_fail")
+                                 .set("filePath", this.manifestFile)
+                                 .get(), e
+            );
+        }
+    }
+
+    private void readManifest() throws IOException
+    {
+        if (!Files.isRegularFile(this.manifestFile))
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.manifestFile))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(this.session))
+                return;
+
+            int mappings = in.readInt();
+            for (int i = 0; i < mappings; i++)
+                this.previousMappings.put(in.readUTF(), in.readUTF());
+
+            int counters = in.readInt();
+            for (int i = 0; i < counters; i++)
+                this.previousNameCounters.put(in.readUTF(), in.readInt());
+        }
+    }
+
+    /**
+     * 今回の実行で決まった名前の対応を登録します.
+     *
+     * @param mappings 名前の対応表
+     */
+    public void putMappings(Map<String, String> mappings)
+    {
+        this.mappings.putAll(mappings);
+    }
+
+    /**
+     * 前回と今回で, 名前の対応が変わったクラスを求めます.
+     * 対応表のキーは {@code クラス名} または {@code クラス名.メンバ...} の形式で, クラス名ごとに比較されます.
+     * <p>
+     * キャッシュから再利用するクラスは変換前の状態で名前が付けられるため, 変換で追加されたメンバは今回の対応表に含まれません.
+     * そのようなクラスについては, 今回の対応表にあるキーのみを比較します.
+     *
+     * @param reusedOwners キャッシュから再利用するクラスの（元の）内部名
+     * @return 対応が変わったクラスの（元の）内部名
+     */
+    public Set<String> getChangedOwners(Set<String> reusedOwners)
+    {
+        Map<String, Map<String, String>> previous = groupByOwner(this.previousMappings);
+        Map<String, Map<String, String>> current = groupByOwner(this.mappings);
+
+        Set<String> changed = new HashSet<>();
+        Set<String> owners = new HashSet<>(previous.keySet());
+        owners.addAll(current.keySet());
+        for (String owner : owners)
+        {
+            Map<String, String> previousNames = previous.getOrDefault(owner, Collections.emptyMap());
+            Map<String, String> currentNames = current.getOrDefault(owner, Collections.emptyMap());
+            if (reusedOwners.contains(owner))
+            {
+                for (Map.Entry<String, String> entry : currentNames.entrySet())
+                    if (!entry.getValue().equals(previousNames.get(entry.getKey())))
+                    {
+                        changed.add(owner);
+                        break;
+                    }
+            }
+            else if (!previousNames.equals(currentNames))
+                changed.add(owner);
+        }
+
+        return changed;
+    }
+
+    /**
+     * 今回の対応表に, キャッシュから再利用したクラスの前回の対応を加えたものを返します.
+     *
+     * @param reusedOwners キャッシュから再利用したクラスの（元の）内部名
+     * @return 次回の実行に引き継ぐ名前の対応表
+     */
+    public Map<String, String> getMergedMappings(Set<String> reusedOwners)
+    {
+        Map<String, String> merged = new HashMap<>(this.mappings);
+        for (Map.Entry<String, String> entry : this.previousMappings.entrySet())
+        {
+            String key = entry.getKey();
+            int separator = key.indexOf('.');
+            if (reusedOwners.contains(separator < 0 ? key: key.substring(0, separator)))
+                merged.putIfAbsent(key, entry.getValue());
+        }
+
+        return merged;
+    }
+
+    private static Map<String, Map<String, String>> groupByOwner(Map<String, String> mappings)
+    {
+        Map<String, Map<String, String>> owners = new HashMap<>();
+        for (Map.Entry<String, String> entry : mappings.entrySet())
+        {
+            String key = entry.getKey();
+            int separator = key.indexOf('.');
+            String owner = separator < 0 ? key: key.substring(0, separator);
+            owners.computeIfAbsent(owner, o -> new HashMap<>()).put(key, entry.getValue());
+        }
+
+        return owners;
+    }
+
+    /**
+     * クラス・ファイルが参照しているクラスの内部名を, 定数プールとメンバのシグネチャから集めます.
+     * 配列やジェネリクスを含む記述子に現れるものも含まれます.
+     *
+     * @param classBytes クラス・ファイル
+     * @return 参照しているクラスの内部名
+     */
+    public static Set<String> getReferencedClasses(byte[] classBytes)
+    {
+        ClassReader reader = new ClassReader(classBytes);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Set<String> descriptors = new HashSet<>();
+        Set<String> classes = new HashSet<>();
+
+        for (int i = 1; i < reader.getItemCount(); i++)
+        {
+            int offset = reader.getItem(i);
+            if (offset == 0)
+                continue;  // long と double の 2 つ目のスロット
+
+            switch (reader.readByte(offset - 1))
+            {
+                case 7:  // CONSTANT_Class
+                    String name = reader.readUTF8(offset, buffer);
+                    if (name.startsWith("["))
+                        descriptors.add(name);
+                    else
+                        classes.add(name);
+                    break;
+                case 12:  // CONSTANT_NameAndType
+                    descriptors.add(reader.readUTF8(offset + 2, buffer));
+                    break;
+                case 16:  // CONSTANT_MethodType
+                    descriptors.add(reader.readUTF8(offset, buffer));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9)
+        {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value)
+            {
+                descriptors.add(descriptor);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
+            {
+                descriptors.add(descriptor);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        for (String descriptor : descriptors)
+        {
+            int start = descriptor.indexOf('L');
+            while (start >= 0)
+            {
+                int end = descriptor.indexOf(';', start);
+                if (end < 0)
+                    break;
+
+                classes.add(descriptor.substring(start + 1, end));
+                start = descriptor.indexOf('L', end);
+            }
+        }
+
+        return Collections.unmodifiableSet(classes);
+    }
+
+    private Path getObjectFile(String key)
+    {
+        return this.objectsDirectory.resolve(key.substring(0, 2)).resolve(key + ".bin");
+    }
+
+    private Path getAdditionalClassFile(String path)
+    {
+        return this.getObjectFile(sha256(this.session + '\n' + path));
+    }
+
+    private static Map<String, byte[]> readEntries(DataInputStream in) throws IOException
+    {
+        int count = readCount(in, Short.BYTES + Integer.BYTES);
+        Map<String, byte[]> entries = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            String name = in.readUTF();
+            byte[] bytes = new byte[readCount(in, 1)];
+            in.readFully(bytes);
+            entries.put(name, bytes);
+        }
+
+        return entries;
+    }
+
+    /**
+     * 要素の数を読み込みます. 負の数や, 残りのデータに収まらない数は, 壊れたエントリとして扱います.
+     *
+     * @param in          {@link ByteArrayInputStream} から読み込むストリーム
+     * @param elementSize 1 要素が占める最小のバイト数
+     */
+    private static int readCount(DataInputStream in, int elementSize) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / elementSize)
+            throw new IOException("Malformed count: " + count);
+
+        return count;
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<String, byte[]> entries) throws IOException
+    {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet())
+        {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+    }
+
+    private static void writeAtomically(Path file, Writer writer) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+            {
+                writer.write(out);
+            }
+
+            try
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static String sha256(String value)
+    {
+        return Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * キャッシュされた書き出し結果.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CachedClass
+    {
+        /**
+         * 書き出し後のパスとバイト列.
+         */
+        private final Map<String, byte[]> outputs;
+        /**
+         * 書き出し結果が必要とする, 変換で追加されたクラスの内部名.
+         * 定数プールから分かる参照は含まれないことがあります.
+         */
+        private final Set<String> dependencies;
+    }
+
+    @FunctionalInterface
+    private interface Writer
+    {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
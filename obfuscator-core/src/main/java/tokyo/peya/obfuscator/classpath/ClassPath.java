@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.classpath;
+
+import lombok.extern.slf4j.Slf4j;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import tokyo.peya.obfuscator.Localisation;
+import tokyo.peya.obfuscator.clazz.ClassReference;
+import tokyo.peya.obfuscator.clazz.ClassWrapper;
+import tokyo.peya.obfuscator.io.ArchiveEntry;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 難読化中に参照されるクラスパス（入力クラスとライブラリ・クラス）.
+ * <p>
+ * 登録済みのクラスに加えて, ライブラリのエントリ名だけを索引として持つことができます.
+ * 索引にのみ存在するクラスは, {@link #get(ClassReference)} などで初めて要求されたときに解析され,
+ * 以降はキャッシュされたものが返されます. すべての操作はスレッド・セーフです.
+ */
+@Slf4j(topic = "ClassPath")
+public class ClassPath
+{
+    private final Map<ClassReference, ClassWrapper> classes;
+    /**
+     * まだ解析していないライブラリ・クラス. キーはクラスの内部名.
+     */
+    private final Map<String, LazyClass> lazyClasses;
+
+    public ClassPath()
+    {
+        this.classes = new ConcurrentHashMap<>();
+        this.lazyClasses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * ライブラリに含まれるクラスを, 解析せずに索引だけ登録します.
+     * 既に登録されている名前のクラスは無視されます（先に追加されたライブラリが優先）.
+     *
+     * @param archive ライブラリ
+     * @return 新たに索引に登録したクラスの数
+     */
+    public int addLazy(LibraryArchive archive)
+    {
+        int added = 0;
+        for (ArchiveEntry entry : archive.getClassEntries())
+        {
+            String name = archive.getClassName(entry);
+            if (name == null)
+                continue;
+
+            if (this.lazyClasses.putIfAbsent(name, new LazyClass(archive, entry)) == null)
+                added++;
+        }
+
+        return added;
+    }
+
+    public ClassWrapper get(ClassReference ref)
+    {
+        ClassWrapper wrapper = this.classes.get(ref);
+        if (wrapper != null || this.lazyClasses.isEmpty())
+            return wrapper;
+
+        return this.resolve(ref);
+    }
+
+    /**
+     * クラスの出自を返します.
+     * 索引にのみ存在するライブラリ・クラスは, 解析せずに判定します.
+     *
+     * @param ref クラス
+     * @return クラスの出自. クラスパス上に存在しない場合は {@code null}
+     */
+    public ClassOrigin getOrigin(ClassReference ref)
+    {
+        ClassWrapper wrapper = this.classes.get(ref);
+        if (wrapper != null)
+            return wrapper.libraryNode ? ClassOrigin.LIBRARY: ClassOrigin.INPUT;
+
+        return this.lazyClasses.containsKey(ref.getFullQualifiedName()) ? ClassOrigin.LIBRARY: null;
+    }
+
+    public boolean containsKey(ClassReference ref)
+    {
+        return this.classes.containsKey(ref) || this.lazyClasses.containsKey(ref.getFullQualifiedName());
+    }
+
+    public ClassWrapper put(ClassReference ref, ClassWrapper wrapper)
+    {
+        return this.classes.put(ref, wrapper);
+    }
+
+    public ClassWrapper putIfAbsent(ClassReference ref, ClassWrapper wrapper)
+    {
+        return this.classes.putIfAbsent(ref, wrapper);
+    }
+
+    public boolean isEmpty()
+    {
+        return this.classes.isEmpty() && this.lazyClasses.isEmpty();
+    }
+
+    /**
+     * 解析済みのクラスを返します. 索引にのみ存在するクラスは含まれません.
+     *
+     * @return 解析済みのクラス
+     */
+    public Collection<ClassWrapper> values()
+    {
+        return Collections.unmodifiableCollection(this.classes.values());
+    }
+
+    private ClassWrapper resolve(ClassReference ref)
+    {
+        LazyClass lazyClass = this.lazyClasses.get(ref.getFullQualifiedName());
+        if (lazyClass == null)
+            return null;
+
+        // 同時に要求された場合も, 解析は一度だけ行われる
+        ClassWrapper wrapper = lazyClass.resolve();
+        if (wrapper == null || !wrapper.classNode.name.equals(ref.getFullQualifiedName()))
+            return null;  // エントリのパスとクラス名が一致しないものは, 実行時と同様に見つからないものとする
+
+        ClassWrapper existing = this.classes.putIfAbsent(ref, wrapper);
+        return existing == null ? wrapper: existing;
+    }
+
+    private static class LazyClass
+    {
+        private final LibraryArchive archive;
+        private final ArchiveEntry entry;
+
+        private volatile boolean resolved;
+        private ClassWrapper wrapper;
+
+        private LazyClass(LibraryArchive archive, ArchiveEntry entry)
+        {
+            this.archive = archive;
+            this.entry = entry;
+        }
+
+        private ClassWrapper resolve()
+        {
+            if (this.resolved)
+                return this.wrapper;
+
+            synchronized (this)
+            {
+                if (!this.resolved)
+                {
+                    this.wrapper = this.parse();
+                    this.resolved = true;
+                }
+
+                return this.wrapper;
+            }
+        }
+
+        private ClassWrapper parse()
+        {
+            try
+            {
+                ClassNode node = new ClassNode();
+                new ClassReader(this.archive.getReader().read(this.entry))
+                        .accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+                return ClassWrapper.ofSource(node, true, this.archive.getClassSource(this.entry));
+            }
+            catch (IOException | RuntimeException e)
+            {
+                log.warn(Localisation.access("logs.obfuscation.classpath.read.fail")
+                                     .set("fileName", this.entry.getName())
+                                     .set("filePath", this.archive.getFile().getAbsolutePath())
+                                     .get(), e
+                );
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.classpath;
+
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import tokyo.peya.obfuscator.io.ArchiveEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ライブラリごとに, 解析済みのクラスの骨格を保存する永続インデックス.
+ * <p>
+ * インデックスはライブラリのパス, サイズ, 更新日時, セントラル・ディレクトリのチェックサムで検証され,
+ * 一致する場合はクラス・ファイルを解析せずに {@link ClassNode} を復元できます.
+ * 保存されるのは, クラス名, スーパー・クラス, インタフェース, アクセス・フラグ, メンバのシグネチャのみです.
+ * <pre>
+ * int magic, int version
+ * long size, long lastModified, long checksum
+ * int stringCount, { int length, byte[length] utf8 }...
+ * int classCount, {
+ *     int entryIndex, int version, int access, int name, int superName,
+ *     int interfaceCount, { int name }...,
+ *     int fieldCount, { int access, int name, int desc }...,
+ *     int methodCount, { int access, int name, int desc }...
+ * }...
+ * </pre>
+ * 文字列はすべて文字列表のインデックスとして格納され, {@code -1} は {@code null} を表します.
+ */
+public final class ClasspathIndex
+{
+    private static final int MAGIC = 0x4A4F4349;  // JOCI
+    private static final int VERSION = 1;
+
+    private ClasspathIndex()
+    {
+    }
+
+    /**
+     * ライブラリに対応するインデックス・ファイルのパスを返します.
+     *
+     * @param directory インデックスを保存するディレクトリ
+     * @param library   ライブラリ
+     * @return インデックス・ファイルのパス
+     */
+    public static Path getIndexFile(Path directory, File library)
+    {
+        String key = Hashing.sha256()
+                            .hashString(library.getAbsolutePath(), StandardCharsets.UTF_8)
+                            .toString();
+        return directory.resolve(key + ".idx");
+    }
+
+    /**
+     * インデックスを読み込みます.
+     *
+     * @param indexFile インデックス・ファイル
+     * @param archive   インデックスに対応するライブラリ
+     * @return 復元したクラス. インデックスが存在しないか, ライブラリが変更されている場合は {@code null}
+     */
+    public static List<IndexedClass> read(Path indexFile, LibraryArchive archive) throws IOException
+    {
+        if (!Files.isRegularFile(indexFile))
+            return null;
+
+        // マップすると古いインデックスを置き換えられなくなる (Windows) ため, 全体を読み込む
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+
+        try
+        {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            File file = archive.getFile();
+            if (buffer.getLong() != file.length()
+                    || buffer.getLong() != file.lastModified()
+                    || buffer.getLong() != archive.getReader().getCentralDirectoryChecksum())
+                return null;
+
+            String[] strings = new String[count(buffer, Integer.BYTES)];
+            for (int i = 0; i < strings.length; i++)
+            {
+                byte[] bytes = new byte[count(buffer, 1)];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            List<ArchiveEntry> entries = archive.getReader().getEntries();
+            int classCount = count(buffer, Integer.BYTES * 8);
+            List<IndexedClass> classes = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++)
+            {
+                ArchiveEntry entry = entries.get(buffer.getInt());
+
+                ClassNode node = new ClassNode();
+                node.version = buffer.getInt();
+                node.access = buffer.getInt();
+                node.name = string(strings, buffer.getInt());
+                node.superName = string(strings, buffer.getInt());
+
+                int interfaceCount = count(buffer, Integer.BYTES);
+                node.interfaces = new ArrayList<>(interfaceCount);
+                for (int j = 0; j < interfaceCount; j++)
+                    node.interfaces.add(string(strings, buffer.getInt()));
+
+                int fieldCount = count(buffer, Integer.BYTES * 3);
+                for (int j = 0; j < fieldCount; j++)
+                    node.fields.add(new FieldNode(
+                            buffer.getInt(),
+                            string(strings, buffer.getInt()),
+                            string(strings, buffer.getInt()),
+                            null,
+                            null
+                    ));
+
+                int methodCount = count(buffer, Integer.BYTES * 3);
+                for (int j = 0; j < methodCount; j++)
+                    node.methods.add(new MethodNode(
+                            Opcodes.ASM9,
+                            buffer.getInt(),
+                            string(strings, buffer.getInt()),
+                            string(strings, buffer.getInt()),
+                            null,
+                            null
+                    ));
+
+                classes.add(new IndexedClass(entry, node));
+            }
+
+            return classes;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            // 壊れたインデックスは作り直す
+            return null;
+        }
+    }
+
+    /**
+     * インデックスを書き込みます. 書き込みは一時ファイルを経由して置き換えるため,
+     * 他のプロセスが読み込み中でも壊れたインデックスが読まれることはありません.
+     *
+     * @param indexFile インデックス・ファイル
+     * @param archive   インデックスに対応するライブラリ
+     * @param classes   解析したクラス
+     */
+    public static void write(Path indexFile, LibraryArchive archive, List<IndexedClass> classes) throws IOException
+    {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (IndexedClass indexedClass : classes)
+        {
+            ClassNode node = indexedClass.getNode();
+            intern(strings, node.name);
+            intern(strings, node.superName);
+            node.interfaces.forEach(name -> intern(strings, name));
+            for (FieldNode field : node.fields)
+            {
+                intern(strings, field.name);
+                intern(strings, field.desc);
+            }
+            for (MethodNode method : node.methods)
+            {
+                intern(strings, method.name);
+                intern(strings, method.desc);
+            }
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        Path temporary = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+            {
+                File file = archive.getFile();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(file.length());
+                out.writeLong(file.lastModified());
+                out.writeLong(archive.getReader().getCentralDirectoryChecksum());
+
+                out.writeInt(strings.size());
+                for (String string : strings.keySet())
+                {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                out.writeInt(classes.size());
+                for (IndexedClass indexedClass : classes)
+                {
+                    ClassNode node = indexedClass.getNode();
+                    out.writeInt(indexedClass.getEntry().getIndex());
+                    out.writeInt(node.version);
+                    out.writeInt(node.access);
+                    out.writeInt(index(strings, node.name));
+                    out.writeInt(index(strings, node.superName));
+
+                    out.writeInt(node.interfaces.size());
+                    for (String name : node.interfaces)
+                        out.writeInt(index(strings, name));
+
+                    out.writeInt(node.fields.size());
+                    for (FieldNode field : node.fields)
+                    {
+                        out.writeInt(field.access);
+                        out.writeInt(index(strings, field.name));
+                        out.writeInt(index(strings, field.desc));
+                    }
+
+                    out.writeInt(node.methods.size());
+                    for (MethodNode method : node.methods)
+                    {
+                        out.writeInt(method.access);
+                        out.writeInt(index(strings, method.name));
+                        out.writeInt(index(strings, method.desc));
+                    }
+                }
+            }
+
+            try
+            {
+                Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void intern(Map<String, Integer> strings, String value)
+    {
+        if (value != null)
+            strings.putIfAbsent(value, strings.size());
+    }
+
+    private static int index(Map<String, Integer> strings, String value)
+    {
+        return value == null ? -1: strings.get(value);
+    }
+
+    /**
+     * 要素の数を読み込みます. 壊れたインデックスで巨大な配列や負の長さの配列を確保しないよう,
+     * 残りのデータに収まらない数は {@link BufferUnderflowException} として扱います.
+     *
+     * @param elementSize 1 要素が占める最小のバイト数
+     */
+    private static int count(ByteBuffer buffer, int elementSize)
+    {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / elementSize)
+            throw new BufferUnderflowException();
+
+        return count;
+    }
+
+    private static String string(String[] strings, int index)
+    {
+        return index < 0 ? null: strings[index];
+    }
+
+    /**
+     * インデックスに格納されるクラス.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class IndexedClass
+    {
+        private final ArchiveEntry entry;
+        private final ClassNode node;
+    }
+}
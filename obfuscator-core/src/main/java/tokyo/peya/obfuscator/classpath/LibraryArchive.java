@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.classpath;
+
+import com.google.common.io.ByteSource;
+import lombok.Getter;
+import tokyo.peya.obfuscator.io.ArchiveEntry;
+import tokyo.peya.obfuscator.io.JarArchiveReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * クラスパスに追加されたライブラリ（.jar, .zip, .jmod）.
+ * <p>
+ * 読み込み後も開いたままにしておき, クラスのバイト列が必要になったときにアーカイブから直接読み込みます.
+ */
+@Getter
+public class LibraryArchive implements Closeable
+{
+    private final File file;
+    private final boolean module;
+    private final JarArchiveReader reader;
+    /**
+     * クラス・ファイルのエントリ. .jmod の場合は {@code classes/} 以下のもののみ.
+     */
+    private final List<ArchiveEntry> classEntries;
+
+    private LibraryArchive(File file, boolean module, JarArchiveReader reader, List<ArchiveEntry> classEntries)
+    {
+        this.file = file;
+        this.module = module;
+        this.reader = reader;
+        this.classEntries = classEntries;
+    }
+
+    public ByteSource getClassSource(ArchiveEntry entry)
+    {
+        return this.reader.asByteSource(entry);
+    }
+
+    /**
+     * エントリのパスからクラスの内部名を求めます.
+     *
+     * @param entry クラス・ファイルのエントリ
+     * @return 内部名（{@code java/lang/Object} など）. クラスとして扱えないエントリの場合は {@code null}
+     */
+    public String getClassName(ArchiveEntry entry)
+    {
+        String name = entry.getName();
+        if (this.module)
+            name = name.substring("classes/".length());
+        else if (name.startsWith("META-INF/") || name.endsWith("module-info.class"))
+            return null;  // マルチリリース JAR のクラスなどは, 実行時のクラスパスと同様に無視する
+
+        return name.substring(0, name.length() - ".class".length());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.reader.close();
+    }
+
+    public static LibraryArchive open(File file) throws IOException
+    {
+        boolean isModule = file.getName().endsWith(".jmod");
+        JarArchiveReader reader = new JarArchiveReader(file.toPath());
+
+        List<ArchiveEntry> classEntries = new ArrayList<>();
+        for (ArchiveEntry entry : reader.getEntries())
+        {
+            String name = entry.getName();
+            if (name.endsWith(".class")
+                    && (!isModule || !name.endsWith("module-info.class")
+                    && name.startsWith("classes/")))
+                classEntries.add(entry);
+        }
+
+        return new LibraryArchive(file, isModule, reader, Collections.unmodifiableList(classEntries));
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.clazz;
+
+import lombok.extern.slf4j.Slf4j;
+import tokyo.peya.obfuscator.Localisation;
+import tokyo.peya.obfuscator.utils.MissingClassException;
+import tokyo.peya.obfuscator.utils.WorkStealingScheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * クラスの継承関係を表す, 不変のグラフです.
+ * <p>
+ * 各クラスには 0 から始まる ID が振られ, 親クラス（スーパークラスとインタフェース）とサブクラスは
+ * ID の配列として保持されます. ID はクラスの内部名の順に振られるため, 同じ入力からは同じグラフが得られます.
+ * 構築後は変更されないため, 複数のスレッドから同時に参照できます.
+ */
+@Slf4j(topic = "Hierarchy")
+public final class ClassGraph
+{
+    private static final int[] NO_CLASSES = new int[0];
+
+    private final Map<ClassReference, Integer> ids;
+    private final ClassReference[] references;
+    private final ClassWrapper[] wrappers;
+    private final int[][] parents;
+    private final int[][] subClasses;
+    private final boolean[] missingSuperClass;
+
+    private ClassGraph(Map<ClassReference, Integer> ids, ClassReference[] references, ClassWrapper[] wrappers,
+                       int[][] parents, int[][] subClasses, boolean[] missingSuperClass)
+    {
+        this.ids = ids;
+        this.references = references;
+        this.wrappers = wrappers;
+        this.parents = parents;
+        this.subClasses = subClasses;
+        this.missingSuperClass = missingSuperClass;
+    }
+
+    /**
+     * 指定されたクラスとその祖先から, 継承関係のグラフを構築します.
+     * <p>
+     * 祖先の解決は, 継承の深さごとに並列で行われます.
+     * 祖先が見つからないクラスと, そのサブクラスには {@link #isMissingSuperClass(int)} が設定されます.
+     *
+     * @param roots              グラフに含めるクラス. 同じ名前のクラスパス上のクラスよりも優先されます.
+     * @param classPath          祖先のクラスを解決する関数. 見つからない場合は {@code null} を返します.
+     * @param acceptMissingClass 祖先が見つからない場合に, 例外を送出せずに警告を出すかどうか
+     * @param scheduler          並列処理に使うスケジューラ
+     * @return 構築されたグラフ
+     * @throws MissingClassException 祖先が見つからず, {@code acceptMissingClass} が {@code false} の場合
+     */
+    public static ClassGraph build(Collection<? extends ClassWrapper> roots,
+                                   Function<? super ClassReference, ? extends ClassWrapper> classPath,
+                                   boolean acceptMissingClass,
+                                   WorkStealingScheduler scheduler)
+    {
+        Map<ClassReference, ClassWrapper> found = new ConcurrentHashMap<>();
+        for (ClassWrapper root : roots)
+            found.putIfAbsent(ClassReference.of(root.classNode), root);
+
+        // 祖先を深さごとに並列で解決する. ライブラリの遅延解析もここで並列に行われる
+        Collection<ClassWrapper> frontier = new ArrayList<>(found.values());
+        while (!frontier.isEmpty())
+        {
+            Set<ClassWrapper> next = ConcurrentHashMap.newKeySet();
+            scheduler.forEach(frontier, wrapper -> {
+                for (ClassReference parent : getParentReferences(wrapper))
+                {
+                    if (found.containsKey(parent))
+                        continue;
+
+                    ClassWrapper resolved = classPath.apply(parent);
+                    if (resolved != null && found.putIfAbsent(parent, resolved) == null)
+                        next.add(resolved);
+                }
+            });
+            frontier = next;
+        }
+
+        List<ClassReference> sorted = new ArrayList<>(found.keySet());
+        sorted.sort(Comparator.comparing(ClassReference::getFullQualifiedName));
+
+        int size = sorted.size();
+        Map<ClassReference, Integer> ids = new HashMap<>(size * 2);
+        ClassReference[] references = sorted.toArray(new ClassReference[0]);
+        ClassWrapper[] wrappers = new ClassWrapper[size];
+        for (int i = 0; i < size; i++)
+        {
+            ids.put(references[i], i);
+            wrappers[i] = found.get(references[i]);
+        }
+
+        int[][] parents = new int[size][];
+        int[] subClassCounts = new int[size];
+        boolean[] missingSuperClass = new boolean[size];
+        for (int i = 0; i < size; i++)
+        {
+            List<ClassReference> parentReferences = getParentReferences(wrappers[i]);
+            int[] resolved = new int[parentReferences.size()];
+            int count = 0;
+            for (ClassReference parentReference : parentReferences)
+            {
+                Integer parent = ids.get(parentReference);
+                if (parent == null)
+                {
+                    reportMissingClass(wrappers[i], parentReference, acceptMissingClass);
+                    missingSuperClass[i] = true;
+                    continue;
+                }
+
+                resolved[count++] = parent;
+                subClassCounts[parent]++;
+            }
+
+            parents[i] = count == 0 ? NO_CLASSES: Arrays.copyOf(resolved, count);
+        }
+
+        int[][] subClasses = new int[size][];
+        for (int i = 0; i < size; i++)
+            subClasses[i] = subClassCounts[i] == 0 ? NO_CLASSES: new int[subClassCounts[i]];
+        int[] filled = new int[size];
+        for (int i = 0; i < size; i++)
+            for (int parent : parents[i])
+                subClasses[parent][filled[parent]++] = i;
+
+        propagateMissingSuperClass(parents, subClasses, missingSuperClass);
+
+        return new ClassGraph(Collections.unmodifiableMap(ids), references, wrappers, parents, subClasses, missingSuperClass);
+    }
+
+    private static List<ClassReference> getParentReferences(ClassWrapper wrapper)
+    {
+        List<ClassReference> result = new ArrayList<>();
+        if (wrapper.classNode.superName != null)
+            result.add(ClassReference.of(wrapper.classNode.superName));
+        if (wrapper.classNode.interfaces != null)
+            for (String interfaceName : wrapper.classNode.interfaces)
+                result.add(ClassReference.of(interfaceName));
+
+        return result;
+    }
+
+    private static void reportMissingClass(ClassWrapper wrapper, ClassReference missing, boolean acceptMissingClass)
+    {
+        String referencingClass = wrapper.classNode.name;
+        String missingName = missing.getFullQualifiedName();
+        boolean isSuperClass = missingName.equals(wrapper.classNode.superName);
+        if (!acceptMissingClass)
+            throw new MissingClassException(
+                    isSuperClass
+                            ? Localisation.access("logs.obfuscation.hierarchy.missing_super_class.fatal")
+                                          .set("missingSuperClass", missingName)
+                                          .set("referencingClass", referencingClass)
+                                          .get()
+                            : Localisation.access("logs.obfuscation.hierarchy.missing_interface.fatal")
+                                          .set("missingInterface", missingName)
+                                          .set("referencingClass", referencingClass)
+                                          .get()
+            );
+
+        if (isSuperClass)
+            log.warn(Localisation.access("logs.obfuscation.hierarchy.missing_super_class")
+                                 .set("missingSuperClass", missingName)
+                                 .set("referencingClass", referencingClass)
+                                 .get()
+            );
+        else
+            log.warn(Localisation.access("logs.obfuscation.hierarchy.missing_interface")
+                                 .set("missingInterface", missingName)
+                                 .set("referencingClass", referencingClass)
+                                 .get()
+            );
+    }
+
+    /**
+     * 祖先が見つからない状態を, 親から子へ一度のトポロジカル順の走査で伝播させます.
+     * 循環した継承（不正なクラス・ファイル）に含まれるクラスは, 安全のため祖先が見つからないものとして扱います.
+     */
+    private static void propagateMissingSuperClass(int[][] parents, int[][] subClasses, boolean[] missingSuperClass)
+    {
+        int size = parents.length;
+        int[] remainingParents = new int[size];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < size; i++)
+        {
+            remainingParents[i] = parents[i].length;
+            if (remainingParents[i] == 0)
+                ready.add(i);
+        }
+
+        boolean[] visited = new boolean[size];
+        while (!ready.isEmpty())
+        {
+            int id = ready.poll();
+            visited[id] = true;
+            for (int parent : parents[id])
+                if (missingSuperClass[parent])
+                {
+                    missingSuperClass[id] = true;
+                    break;
+                }
+
+            for (int sub : subClasses[id])
+                if (--remainingParents[sub] == 0)
+                    ready.add(sub);
+        }
+
+        for (int i = 0; i < size; i++)
+            if (!visited[i])
+                missingSuperClass[i] = true;
+    }
+
+    /**
+     * グラフに含まれるクラスの数を返します. ID は 0 から この値 - 1 までです.
+     *
+     * @return クラスの数
+     */
+    public int size()
+    {
+        return this.references.length;
+    }
+
+    /**
+     * クラスの ID を返します.
+     *
+     * @param ref クラス
+     * @return クラスの ID. グラフに含まれない場合は {@code -1}
+     */
+    public int getId(ClassReference ref)
+    {
+        Integer id = this.ids.get(ref);
+        return id == null ? -1: id;
+    }
+
+    public ClassReference getReference(int id)
+    {
+        return this.references[id];
+    }
+
+    public ClassWrapper getWrapper(int id)
+    {
+        return this.wrappers[id];
+    }
+
+    /**
+     * 解決できた親クラス（スーパークラスとインタフェース）の ID を返します.
+     * 返される配列は変更しないでください.
+     *
+     * @param id クラスの ID
+     * @return 親クラスの ID
+     */
+    public int[] getParents(int id)
+    {
+        return this.parents[id];
+    }
+
+    /**
+     * このグラフに含まれる, 直接のサブクラスの ID を返します.
+     * 返される配列は変更しないでください.
+     *
+     * @param id クラスの ID
+     * @return サブクラスの ID
+     */
+    public int[] getSubClasses(int id)
+    {
+        return this.subClasses[id];
+    }
+
+    /**
+     * 祖先のいずれかが見つからなかったかどうかを返します.
+     * この場合, メンバの名前を変更すると継承関係が壊れる可能性があります.
+     *
+     * @param id クラスの ID
+     * @return 祖先が見つからなかった場合は {@code true}
+     */
+    public boolean isMissingSuperClass(int id)
+    {
+        return this.missingSuperClass[id];
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.clazz;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import tokyo.peya.obfuscator.Obfuscator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * フレームの計算に必要な, クラス同士の共通のスーパクラスを求めます.
+ * <p>
+ * {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)} の既定の実装はクラスを実際にロードしますが,
+ * これはクラスパス上のクラスのヘッダ（スーパクラス, インタフェース, アクセス・フラグ）だけから解決します.
+ * 結果はクラスの組ごとにキャッシュされます. すべての操作はスレッド・セーフです.
+ *
+ * @see ModifiedClassWriter
+ */
+public class ClassHierarchyResolver
+{
+    private static final String OBJECT = "java/lang/Object";
+
+    private final Obfuscator obfuscator;
+    private final Map<String, ClassHeader> headers;
+    private final Map<String, String> commonSuperClasses;
+
+    public ClassHierarchyResolver(Obfuscator obfuscator)
+    {
+        this.obfuscator = obfuscator;
+        this.headers = new ConcurrentHashMap<>();
+        this.commonSuperClasses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 2 つのクラスの共通のスーパクラスを返します. 意味は {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)} と同じです.
+     *
+     * @param type1 クラスの内部名
+     * @param type2 クラスの内部名
+     * @return 共通のスーパクラスの内部名
+     * @throws TypeNotPresentException どちらかのクラスが見つからない場合
+     */
+    public String getCommonSuperClass(String type1, String type2)
+    {
+        if (type1.equals(type2))
+            return type1;
+
+        // 結果は引数の順序に依存しないため, 正規化してキャッシュする
+        String key = type1.compareTo(type2) < 0 ? type1 + ';' + type2: type2 + ';' + type1;
+        String cached = this.commonSuperClasses.get(key);
+        if (cached != null)
+            return cached;
+
+        String result = this.computeCommonSuperClass(type1, type2);
+        this.commonSuperClasses.putIfAbsent(key, result);
+        return result;
+    }
+
+    /**
+     * キャッシュを破棄します. クラス名が変更されたときに呼び出す必要があります.
+     */
+    public void invalidate()
+    {
+        this.headers.clear();
+        this.commonSuperClasses.clear();
+    }
+
+    private String computeCommonSuperClass(String type1, String type2)
+    {
+        ClassHeader header1 = this.getHeader(type1);
+        ClassHeader header2 = this.getHeader(type2);
+
+        if (this.isAssignableFrom(header1, header2))
+            return type1;
+        if (this.isAssignableFrom(header2, header1))
+            return type2;
+        if (header1.isInterface() || header2.isInterface())
+            return OBJECT;
+
+        ClassHeader current = header1;
+        do
+        {
+            if (current.superName == null)
+                return OBJECT;
+            current = this.getHeader(current.superName);
+        }
+        while (!this.isAssignableFrom(current, header2));
+
+        return current.name;
+    }
+
+    private boolean isAssignableFrom(ClassHeader target, ClassHeader from)
+    {
+        if (target.name.equals(from.name) || target.name.equals(OBJECT))
+            return true;
+
+        // スーパクラスとインタフェースを幅優先でたどる
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(from.name);
+        while (!queue.isEmpty())
+        {
+            ClassHeader header = this.getHeader(queue.removeFirst());
+            if (header.superName != null)
+            {
+                if (header.superName.equals(target.name))
+                    return true;
+                if (visited.add(header.superName))
+                    queue.add(header.superName);
+            }
+
+            for (String anInterface : header.interfaces)
+            {
+                if (anInterface.equals(target.name))
+                    return true;
+                if (visited.add(anInterface))
+                    queue.add(anInterface);
+            }
+        }
+
+        return false;
+    }
+
+    private ClassHeader getHeader(String name)
+    {
+        ClassHeader header = this.headers.get(name);
+        if (header != null)
+            return header;
+
+        header = this.findHeader(name);
+        if (header == null)
+            throw new TypeNotPresentException(name, null);
+
+        ClassHeader existing = this.headers.putIfAbsent(name, header);
+        return existing == null ? header: existing;
+    }
+
+    private ClassHeader findHeader(String name)
+    {
+        ClassReference ref = ClassReference.of(name);
+
+        // 名前の難読化後のクラスは, 新しい名前で入力クラスに登録されている
+        ClassNode node = this.obfuscator.getClasses().get(ref);
+        if (node == null)
+        {
+            ClassWrapper wrapper = this.obfuscator.getClassPath().get(ref);
+            if (wrapper != null && name.equals(wrapper.classNode.name))
+                node = wrapper.classNode;
+        }
+        if (node == null)
+            node = ObfuscatorClassLoader.getTempClass(ref);
+        if (node != null)
+            return new ClassHeader(node.name, node.superName, node.interfaces, node.access);
+
+        // クラスパスに無いもの（実行中のランタイムのクラスなど）は, 親のクラス・ローダから読み込む
+        try (InputStream in = ObfuscatorClassLoader.INSTANCE.getParent().getResourceAsStream(name + ".class"))
+        {
+            if (in == null)
+                return null;
+
+            ClassReader reader = new ClassReader(in);
+            return new ClassHeader(reader.getClassName(), reader.getSuperName(), List.of(reader.getInterfaces()), reader.getAccess());
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static class ClassHeader
+    {
+        private final String name;
+        private final String superName;
+        private final String[] interfaces;
+        private final int access;
+
+        private ClassHeader(String name, String superName, List<String> interfaces, int access)
+        {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces == null ? new String[0]: interfaces.toArray(new String[0]);
+            this.access = access;
+        }
+
+        private boolean isInterface()
+        {
+            return (this.access & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+}
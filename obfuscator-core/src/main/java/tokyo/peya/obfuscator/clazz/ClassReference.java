@@ -11,25 +11,38 @@
 
 package tokyo.peya.obfuscator.clazz;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 
+/**
+ * クラスへの参照です.
+ * <p>
+ * 内部名（{@code a/b/C} の形式）を一度だけ正規化して保持し, ハッシュ値もそこから求めます.
+ * 同じ名前の参照は {@link #of(String)} などで同じインスタンスに正規化されるため,
+ * 多くの場合, 等価性の判定は参照の比較で済みます.
+ * パッケージ名やファイル名などの派生する名前は, 初めて必要になったときに生成してキャッシュします.
+ */
 public class ClassReference
 {
-    private static final ClassReference EMPTY = new ClassReference(new String[0], "");
+    private static final Interner<ClassReference> INTERNER = Interners.newWeakInterner();
+    private static final ClassReference EMPTY = new ClassReference("");
+
+    private final String internalName;
+    private final int hash;
 
-    private final String[] packages;
-    private final String className;
+    private String packageName;
+    private String packageDotName;
+    private String dotName;
+    private String fileNameFull;
 
-    private ClassReference(String[] packages, String className)
+    private ClassReference(String internalName)
     {
-        this.packages = normalizePackages(packages);
-        this.className = className;
+        this.internalName = internalName;
+        this.hash = internalName.hashCode();
     }
 
     public static ClassReference of(String className)
@@ -37,19 +50,17 @@ public class ClassReference
         if (className == null || className.isEmpty())
             return EMPTY;
 
-        String[] parts = className.replace('/', '.').split("\\.");
-        String[] packages = new String[parts.length - 1];
-        System.arraycopy(parts, 0, packages, 0, parts.length - 1);
-        return new ClassReference(packages, parts[parts.length - 1]);
+        return intern(normalize(className));
     }
 
     public static ClassReference of(String packageName, String className)
     {
         if (className == null || className.isEmpty())
             return EMPTY;
+        else if (packageName == null || packageName.isEmpty())
+            return intern(normalize(className));
 
-        String[] packages = packageName == null ? new String[0]: packageName.replace('/', '.').split("\\.");
-        return new ClassReference(packages, className);
+        return intern(normalize(packageName + "/" + className));
     }
 
     public static ClassReference of(ClassNode classNode)
@@ -60,47 +71,106 @@ public class ClassReference
         return of(classNode.name);
     }
 
-    private static String[] normalizePackages(String[] packages)
+    private static ClassReference intern(String internalName)
+    {
+        if (internalName.isEmpty())
+            return EMPTY;
+
+        return INTERNER.intern(new ClassReference(internalName));
+    }
+
+    /**
+     * 名前を内部名の形式に正規化します.
+     * 区切り文字を {@code /} に揃え, 空の要素（先頭, 末尾, 連続する区切り文字）を取り除きます.
+     * 既に正規化されている名前は, そのまま返します.
+     */
+    private static String normalize(String name)
+    {
+        if (isNormalized(name))
+            return name;
+
+        StringBuilder sb = new StringBuilder(name.length());
+        int start = 0;
+        for (int i = 0; i <= name.length(); i++)
+        {
+            if (i < name.length() && name.charAt(i) != '/' && name.charAt(i) != '.')
+                continue;
+
+            if (i > start)
+            {
+                if (!sb.isEmpty())
+                    sb.append('/');
+                sb.append(name, start, i);
+            }
+            start = i + 1;
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean isNormalized(String name)
     {
-        if (packages == null || packages.length == 0)
-            return new String[0];
+        int length = name.length();
+        if (name.charAt(0) == '/' || name.charAt(length - 1) == '/')
+            return false;
 
-        List<String> result = new ArrayList<>(packages.length);
-        for (String pkg : packages)
-            if (!(pkg == null || pkg.isEmpty()))
-                result.add(pkg);
+        for (int i = 0; i < length; i++)
+        {
+            char c = name.charAt(i);
+            if (c == '.' || c == '/' && name.charAt(i - 1) == '/')
+                return false;
+        }
 
-        return result.toArray(new String[0]);
+        return true;
     }
 
     public String getPackageDotName()
     {
-        return String.join(".", this.packages);
+        String result = this.packageDotName;
+        if (result == null)
+            this.packageDotName = result = this.getPackage().replace('/', '.');
+
+        return result;
     }
 
     public String getPackage()
     {
-        return String.join("/", this.packages);
+        String result = this.packageName;
+        if (result == null)
+        {
+            int index = this.internalName.lastIndexOf('/');
+            this.packageName = result = index < 0 ? "": this.internalName.substring(0, index);
+        }
+
+        return result;
     }
 
     public String getFullQualifiedName()
     {
-        return concat(this.getPackage(), this.className, "/");
+        return this.internalName;
     }
 
     public String getFullQualifiedDotName()
     {
-        return concat(this.getPackageDotName(),this.className, ".");
+        String result = this.dotName;
+        if (result == null)
+            this.dotName = result = this.internalName.replace('/', '.');
+
+        return result;
     }
 
     public String getFileName()
     {
-        return this.className + ".class";
+        return this.getClassName() + ".class";
     }
 
     public String getFileNameFull()
     {
-        return concat(this.getPackage(), this.getFileName(), "/");
+        String result = this.fileNameFull;
+        if (result == null)
+            this.fileNameFull = result = this.internalName + ".class";
+
+        return result;
     }
 
     public Path getFilePath()
@@ -108,20 +178,24 @@ public class ClassReference
         return Path.of(this.getFileNameFull());
     }
 
+    private String getClassName()
+    {
+        return this.internalName.substring(this.internalName.lastIndexOf('/') + 1);
+    }
+
     @Override
     public boolean equals(Object o)
     {
+        if (this == o)
+            return true;
         if (!(o instanceof ClassReference that))
             return false;
-        else if (this == that)
-            return true;
-        return Objects.deepEquals(this.packages, that.packages)
-                && Objects.equals(this.className, that.className);
+        return this.hash == that.hash && this.internalName.equals(that.internalName);
     }
 
     public boolean isEqualClassName(String className)
     {
-        return Objects.equals(this.className, className);
+        return Objects.equals(this.getClassName(), className);
     }
 
     public boolean isEqualPackage(String packageName)
@@ -131,13 +205,13 @@ public class ClassReference
 
     public boolean isEqualClass(String fullQualifiedName)
     {
-        return Objects.equals(this.getFullQualifiedName(), fullQualifiedName.replace('.', '/'));
+        return Objects.equals(this.internalName, fullQualifiedName.replace('.', '/'));
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(Arrays.hashCode(this.packages), this.className);
+        return this.hash;
     }
 
     @Override
@@ -145,14 +219,4 @@ public class ClassReference
     {
         return this.getFullQualifiedDotName();
     }
-
-    private static String concat(String a, String b, String delimiter)
-    {
-        if (a == null || a.isEmpty())
-            return b;
-        else if (b == null || b.isEmpty())
-            return a;
-        else
-            return a + delimiter + b;
-    }
 }
@@ -11,8 +11,10 @@
 
 package tokyo.peya.obfuscator.clazz;
 
+import com.google.common.io.ByteSource;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -42,6 +44,12 @@ public class ClassWrapper
      */
     public byte[] originalClass;
 
+    /**
+     * Lazy source of the original bytes, used instead of {@link #originalClass} when the bytes
+     * should not stay in memory. (e.g. streaming mode)
+     */
+    public ByteSource originalClassSource;
+
     /**
      * Methods.
      */
@@ -79,4 +87,35 @@ public class ClassWrapper
             )));
         }
     }
+
+    /**
+     * Creates a ClassWrapper object whose original bytes are read on demand.
+     *
+     * @param classNode           the attached {@link ClassNode}.
+     * @param libraryNode         is this a library class?
+     * @param originalClassSource source of the original bytes of the class
+     * @return the created wrapper
+     */
+    public static ClassWrapper ofSource(ClassNode classNode, boolean libraryNode, ByteSource originalClassSource)
+    {
+        ClassWrapper wrapper = new ClassWrapper(classNode, libraryNode, null);
+        wrapper.originalClassSource = originalClassSource;
+
+        return wrapper;
+    }
+
+    /**
+     * Returns the original bytes of the class, reading them from {@link #originalClassSource} if needed.
+     * Bytes read from the source are not cached.
+     *
+     * @return original bytes of the class, or {@code null} if unknown
+     * @throws IOException if the source could not be read
+     */
+    public byte[] getOriginalClass() throws IOException
+    {
+        if (this.originalClass != null || this.originalClassSource == null)
+            return this.originalClass;
+
+        return this.originalClassSource.read();
+    }
 }
@@ -13,6 +13,8 @@ package tokyo.peya.obfuscator.clazz;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import tokyo.peya.obfuscator.JavaObfuscator;
+import tokyo.peya.obfuscator.Obfuscator;
 
 /**
  * A {@link ClassVisitor} that generates a corresponding ClassFile structure, as defined in the Java
@@ -41,4 +43,15 @@ public class ModifiedClassWriter extends ClassWriter
     {
         return ObfuscatorClassLoader.INSTANCE;
     }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2)
+    {
+        // クラスを定義せずに, クラスパスの階層情報から解決する
+        Obfuscator session = JavaObfuscator.getCurrentSession();
+        if (session == null)
+            return super.getCommonSuperClass(type1, type2);
+
+        return session.getHierarchyResolver().getCommonSuperClass(type1, type2);
+    }
 }
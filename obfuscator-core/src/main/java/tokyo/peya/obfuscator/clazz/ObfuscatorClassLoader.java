@@ -47,6 +47,11 @@ public class ObfuscatorClassLoader extends ClassLoader
         INSTANCE.tempClasses.remove(ref);
     }
 
+    public static ClassNode getTempClass(ClassReference ref)
+    {
+        return INSTANCE.tempClasses.get(ref);
+    }
+
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException
     {
@@ -83,19 +88,29 @@ public class ObfuscatorClassLoader extends ClassLoader
         {
             ClassWrapper classWrapper = JavaObfuscator.getCurrentSession().getClassPath().get(ref);
 
-            if (classWrapper == null || classWrapper.originalClass == null)
+            byte[] originalClass;
+            try
+            {
+                originalClass = classWrapper == null ? null: classWrapper.getOriginalClass();
+            }
+            catch (IOException e)
+            {
+                throw new ClassNotFoundException(name, e);
+            }
+
+            if (originalClass == null)
                 throw new ClassNotFoundException(name);
 
             try
             {
-                return defineClass(name, classWrapper.originalClass, 0, classWrapper.originalClass.length);
+                return defineClass(name, originalClass, 0, originalClass.length);
             }
             catch (ClassFormatError classFormatError)
             {
                 classFormatError.printStackTrace();
                 try
                 {
-                    Files.write(new File("A:/invalid.class").toPath(), classWrapper.originalClass);
+                    Files.write(new File("A:/invalid.class").toPath(), originalClass);
                 }
                 catch (IOException e)
                 {
@@ -1,6 +1,6 @@
 /*
  * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
- * Copyright (c) 2023-2025 Peyang
+ * Copyright (c) 2025 Peyang
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
  *
@@ -9,46 +9,44 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-package tokyo.peya.obfuscator.clazz;
+package tokyo.peya.obfuscator.io;
 
-import java.util.HashSet;
-import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 /**
- * Used to keep information on the hierarchy of all loaded classes.
- *
- * @author ItzSomebody
+ * セントラル・ディレクトリから読み込んだ, アーカイブ内のエントリの情報.
  */
-public class ClassTree
+@Getter
+@AllArgsConstructor
+public class ArchiveEntry
 {
     /**
-     * Attached ClassWrapper.
+     * アーカイブ内でのエントリの位置.
      */
-    public ClassWrapper classWrapper;
-
+    private final int index;
+    private final String name;
     /**
-     * Names of classes this represented class inherits from.
+     * 圧縮方式. {@link java.util.zip.ZipEntry#STORED} または {@link java.util.zip.ZipEntry#DEFLATED}.
      */
-    public Set<ClassReference> parentClasses = new HashSet<>();
-
+    private final int method;
+    private final int flags;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
     /**
-     * Names of classes this represented class is inherited by.
+     * ローカル・ファイル・ヘッダの位置.
      */
-    public Set<ClassReference> subClasses = new HashSet<>();
+    private final long localHeaderOffset;
 
-    /**
-     * If one of the super-classes is missing this is set to true.
-     * It prevents methods from being remapped.
-     */
-    public boolean missingSuperClass;
+    public boolean isDirectory()
+    {
+        return this.name.endsWith("/");
+    }
 
-    /**
-     * Creates a ClassTree object.
-     *
-     * @param classWrapper the ClassWraper attached to this ClassTree.
-     */
-    public ClassTree(ClassWrapper classWrapper)
+    @Override
+    public String toString()
     {
-        this.classWrapper = classWrapper;
+        return this.name;
     }
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.io;
+
+import com.google.common.base.Optional;
+import com.google.common.io.ByteSource;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 位置指定の読み込みを使ってアーカイブを読み込むリーダ.
+ * <p>
+ * セントラル・ディレクトリを一度だけ読み込み, 各エントリはローカル・ヘッダの位置から直接展開します.
+ * メモリ・マップは使わないため, 閉じた時点でファイルのロックは解放されます (Windows でマップが残ると, ファイルを削除・上書きできなくなる).
+ * エントリ同士は独立して読み込めるため, {@link #readAll(int, Consumer)} で並列に展開できます.
+ * 展開したデータは, セントラル・ディレクトリに記録されたサイズちょうどの配列に書き込まれます.
+ */
+public class JarArchiveReader implements Closeable
+{
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final byte[] EMPTY = new byte[0];
+    /**
+     * 使い回すバッファの最大サイズ. これより大きいエントリは, その都度割り当てる.
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    /**
+     * エントリの圧縮データを読み込むための, スレッドごとに使い回すバッファ.
+     */
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    @Getter
+    private final List<ArchiveEntry> entries;
+    /**
+     * セントラル・ディレクトリのチェックサム.
+     * セントラル・ディレクトリには全エントリの CRC が含まれるため, アーカイブの内容のハッシュとして使えます.
+     */
+    @Getter
+    private long centralDirectoryChecksum;
+
+    public JarArchiveReader(Path path) throws IOException
+    {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            this.fileSize = this.channel.size();
+            this.buffers = new ThreadLocal<>();
+            this.entries = Collections.unmodifiableList(this.readCentralDirectory());
+        }
+        catch (IOException | RuntimeException e)
+        {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * エントリを展開して読み込みます. このメソッドはスレッド・セーフです.
+     *
+     * @param entry 読み込むエントリ
+     * @return エントリの内容
+     */
+    public byte[] read(ArchiveEntry entry) throws IOException
+    {
+        Inflater inflater = entry.getMethod() == ZipEntry.DEFLATED ? new Inflater(true): null;
+        try
+        {
+            return this.read(entry, inflater);
+        }
+        finally
+        {
+            if (inflater != null)
+                inflater.end();
+        }
+    }
+
+    /**
+     * 全てのエントリを並列に展開して読み込みます.
+     *
+     * @param threads 使用するスレッド数
+     * @param onRead  各エントリを読み込んだときに, 読み込んだスレッドから呼び出されるリスナ
+     * @return {@link #getEntries()} と同じ順序のエントリの内容. ディレクトリは空の配列になります.
+     */
+    public byte[][] readAll(int threads, Consumer<? super ArchiveEntry> onRead) throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try
+        {
+            return this.readAll(executor, threads, onRead);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 全てのエントリを, 既存の実行サービスを使って並列に展開して読み込みます.
+     *
+     * @param executor 展開に使用する実行サービス. シャットダウンはされません
+     * @param threads  同時に展開するエントリの最大数
+     * @param onRead   各エントリを読み込んだときに, 読み込んだスレッドから呼び出されるリスナ
+     * @return {@link #getEntries()} と同じ順序のエントリの内容. ディレクトリは空の配列になります.
+     */
+    public byte[][] readAll(ExecutorService executor, int threads, Consumer<? super ArchiveEntry> onRead) throws IOException
+    {
+        int size = this.entries.size();
+        byte[][] results = new byte[size][];
+        AtomicInteger next = new AtomicInteger(0);
+
+        int threadCount = Math.max(1, Math.min(threads, size));
+        List<Future<Void>> futures = new ArrayList<>(threadCount);
+        try
+        {
+            for (int i = 0; i < threadCount; i++)
+                futures.add(executor.submit(() -> {
+                    // 展開器はスレッドごとに使い回す
+                    Inflater inflater = new Inflater(true);
+                    try
+                    {
+                        int index;
+                        while ((index = next.getAndIncrement()) < size)
+                        {
+                            ArchiveEntry entry = this.entries.get(index);
+                            results[index] = entry.isDirectory() ? EMPTY: this.read(entry, inflater);
+                            onRead.accept(entry);
+                        }
+                    }
+                    finally
+                    {
+                        inflater.end();
+                    }
+
+                    return null;
+                }));
+
+            for (Future<Void> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + this.path, e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            else if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw new IOException("Failed to read " + this.path, e.getCause());
+        }
+        finally
+        {
+            // 失敗した場合に, 残りのワーカが後続のエントリを読まないようにする
+            next.set(size);
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        return results;
+    }
+
+    /**
+     * エントリの内容を, 必要になったときに読み込む {@link ByteSource} を返します.
+     * このリーダが閉じられた後は読み込めません.
+     *
+     * @param entry エントリ
+     * @return エントリの内容を読み込むソース
+     */
+    public ByteSource asByteSource(ArchiveEntry entry)
+    {
+        return new ByteSource()
+        {
+            @Override
+            public InputStream openStream() throws IOException
+            {
+                return new ByteArrayInputStream(this.read());
+            }
+
+            @Override
+            public byte[] read() throws IOException
+            {
+                return JarArchiveReader.this.read(entry);
+            }
+
+            @Override
+            public Optional<Long> sizeIfKnown()
+            {
+                return Optional.of(entry.getSize());
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    private byte[] read(ArchiveEntry entry, Inflater inflater) throws IOException
+    {
+        String name = entry.getName();
+        if ((entry.getFlags() & 1) != 0)
+            throw new ZipException("Encrypted entries are not supported: " + name);
+        if (entry.getSize() > Integer.MAX_VALUE - 8)
+            throw new ZipException("Entry is too large: " + name);
+
+        long localOffset = entry.getLocalHeaderOffset();
+        ByteBuffer local = this.region(localOffset, LOC_HEADER_SIZE, null);
+        if (local.getInt(0) != LOC_SIGNATURE)
+            throw new ZipException("Invalid local file header: " + name);
+
+        // ローカル・ヘッダの拡張フィールドは, セントラル・ディレクトリのものと異なる場合がある
+        long dataOffset = localOffset + LOC_HEADER_SIZE
+                + (local.getShort(26) & 0xFFFF)
+                + (local.getShort(28) & 0xFFFF);
+        ByteBuffer data = this.region(dataOffset, entry.getCompressedSize(), this.buffers);
+
+        byte[] out = new byte[(int) entry.getSize()];
+        switch (entry.getMethod())
+        {
+            case ZipEntry.STORED:
+                if (entry.getCompressedSize() != entry.getSize())
+                    throw new ZipException("Invalid size of stored entry: " + name);
+                data.get(out);
+                break;
+            case ZipEntry.DEFLATED:
+                inflate(inflater, data, out, name);
+                break;
+            default:
+                throw new ZipException("Unsupported compression method " + entry.getMethod() + ": " + name);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(out);
+        if (crc.getValue() != entry.getCrc())
+            throw new ZipException("Invalid CRC of entry: " + name);
+
+        return out;
+    }
+
+    private List<ArchiveEntry> readCentralDirectory() throws IOException
+    {
+        long searchStart = Math.max(0, this.fileSize - (EOCD_SIZE + 0xFFFF));
+        ByteBuffer tail = this.region(searchStart, this.fileSize - searchStart, null);
+
+        int eocd = -1;
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--)
+            if (tail.getInt(i) == EOCD_SIGNATURE)
+            {
+                eocd = i;
+                break;
+            }
+
+        if (eocd < 0)
+            throw new ZipException("End of central directory record is not found: " + this.path);
+
+        long totalEntries = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+        long eocdPosition = searchStart + eocd;
+        long directoryEnd = eocdPosition;
+        boolean mayBeZip64 = totalEntries == 0xFFFF
+                || directorySize == ZIP64_MAGIC
+                || directoryOffset == ZIP64_MAGIC;
+        if (mayBeZip64 && eocdPosition >= ZIP64_EOCD_LOCATOR_SIZE)
+        {
+            long locatorPosition = eocdPosition - ZIP64_EOCD_LOCATOR_SIZE;
+            ByteBuffer locator = this.region(locatorPosition, ZIP64_EOCD_LOCATOR_SIZE, null);
+            if (locator.getInt(0) == ZIP64_EOCD_LOCATOR_SIGNATURE)
+            {
+                // ロケータのオフセットも, 先頭に付加されたデータの分だけずれている.
+                // ZIP64 終端レコードは通常ロケータの直前にあるため, まずその位置を確かめる
+                directoryEnd = locatorPosition - ZIP64_EOCD_SIZE;
+                if (directoryEnd < 0 || this.region(directoryEnd, 4, null).getInt(0) != ZIP64_EOCD_SIGNATURE)
+                    directoryEnd = locator.getLong(8);
+
+                ByteBuffer zip64 = this.region(directoryEnd, ZIP64_EOCD_SIZE, null);
+                if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE)
+                    throw new ZipException("Invalid ZIP64 end of central directory record: " + this.path);
+
+                totalEntries = zip64.getLong(32);
+                directorySize = zip64.getLong(40);
+                directoryOffset = zip64.getLong(48);
+            }
+        }
+
+        if (totalEntries > Integer.MAX_VALUE || directorySize > Integer.MAX_VALUE)
+            throw new ZipException("Central directory is too large: " + this.path);
+
+        // 先頭にデータが付加されたアーカイブ（.jmod など）では, オフセットがその分ずれる
+        long base = directoryEnd - directorySize - directoryOffset;
+        if (base < 0)
+            throw new ZipException("Invalid central directory offset: " + this.path);
+
+        ByteBuffer directory = this.region(base + directoryOffset, directorySize, null);
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(directory.duplicate());
+        this.centralDirectoryChecksum = checksum.getValue();
+
+        List<ArchiveEntry> result = new ArrayList<>((int) totalEntries);
+        int position = 0;
+        for (int i = 0; i < totalEntries; i++)
+        {
+            if (position + CEN_HEADER_SIZE > directory.limit() || directory.getInt(position) != CEN_SIGNATURE)
+                throw new ZipException("Invalid central directory header: " + this.path);
+
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + CEN_HEADER_SIZE, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC)
+            {
+                int extra = position + CEN_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd)
+                {
+                    int id = directory.getShort(extra) & 0xFFFF;
+                    int length = directory.getShort(extra + 2) & 0xFFFF;
+                    if (id == ZIP64_EXTRA_ID)
+                    {
+                        // 値が 0xFFFFFFFF のフィールドだけが, この順序で格納される
+                        int field = extra + 4;
+                        if (size == ZIP64_MAGIC)
+                        {
+                            size = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC)
+                        {
+                            compressedSize = directory.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC)
+                            localHeaderOffset = directory.getLong(field);
+                        break;
+                    }
+
+                    extra += 4 + length;
+                }
+            }
+
+            result.add(new ArchiveEntry(i, name, method, flags, crc, compressedSize, size, base + localHeaderOffset));
+            position += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return result;
+    }
+
+    /**
+     * ファイルの範囲を読み込みます. {@link FileChannel} の位置指定の読み込みはスレッド・セーフです.
+     *
+     * @param pool 使い回すバッファ. {@code null} の場合は新しいバッファを割り当てます
+     */
+    private ByteBuffer region(long offset, long length, ThreadLocal<ByteBuffer> pool) throws IOException
+    {
+        if (offset < 0 || length < 0 || offset + length > this.fileSize || length > Integer.MAX_VALUE)
+            throw new ZipException("Invalid region " + offset + "+" + length + " in " + this.path);
+
+        boolean pooled = pool != null && length <= MAX_POOLED_BUFFER_SIZE;
+        ByteBuffer buffer = pooled ? pool.get(): null;
+        if (buffer == null || buffer.capacity() < length)
+        {
+            buffer = ByteBuffer.allocate((int) length);
+            if (pooled)
+                pool.set(buffer);
+        }
+        buffer.clear().limit((int) length);
+
+        while (buffer.hasRemaining())
+        {
+            int read = this.channel.read(buffer, offset + buffer.position());
+            if (read < 0)
+                throw new ZipException("Unexpected end of file " + this.path);
+        }
+        buffer.flip();
+
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void inflate(Inflater inflater, ByteBuffer input, byte[] out, String name) throws ZipException
+    {
+        inflater.reset();
+        inflater.setInput(input);
+
+        int offset = 0;
+        try
+        {
+            while (offset < out.length)
+            {
+                int inflated = inflater.inflate(out, offset, out.length - offset);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    throw new ZipException("Unexpected end of entry: " + name);
+
+                offset += inflated;
+            }
+        }
+        catch (DataFormatException e)
+        {
+            throw new ZipException("Invalid deflate data of entry " + name + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.io;
+
+import com.google.common.io.CountingOutputStream;
+import tokyo.peya.obfuscator.utils.BoundedPipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * エントリを並列に圧縮して書き込むアーカイブのライタ.
+ * <p>
+ * 各エントリは独立した deflate ストリームとしてワーカ・スレッドで圧縮され,
+ * CRC とサイズが確定した状態で, {@link #write(String, byte[])} を呼び出した順に書き込まれます.
+ * そのため, ローカル・ヘッダにサイズを書き込むことができ, データ・ディスクリプタは使用しません.
+ */
+public class JarArchiveWriter implements Closeable
+{
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final CountingOutputStream out;
+    private final boolean stored;
+    private final int dosTime;
+    private final BoundedPipeline<CompressedEntry> pipeline;
+    private final Queue<Deflater> deflaters;
+    private final List<CompressedEntry> writtenEntries;
+    private final Set<String> names;
+
+    private boolean closed;
+
+    /**
+     * @param out     出力先
+     * @param stored  {@code true} の場合は圧縮せずに格納します
+     * @param threads 圧縮に使用するスレッド数
+     */
+    public JarArchiveWriter(OutputStream out, boolean stored, int threads)
+    {
+        this(out, stored, null, threads);
+    }
+
+    /**
+     * @param out      出力先
+     * @param stored   {@code true} の場合は圧縮せずに格納します
+     * @param executor 圧縮に使用する実行サービス. {@code null} の場合は専用のスレッドを作成します
+     * @param threads  圧縮に使用するスレッド数
+     */
+    public JarArchiveWriter(OutputStream out, boolean stored, ExecutorService executor, int threads)
+    {
+        this.out = new CountingOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.stored = stored;
+        this.dosTime = toDosTime(LocalDateTime.now());
+        this.deflaters = new ConcurrentLinkedQueue<>();
+        this.writtenEntries = new ArrayList<>();
+        this.names = new HashSet<>();
+
+        int threadCount = Math.max(1, threads);
+        this.pipeline = executor == null
+                ? new BoundedPipeline<>(threadCount, threadCount * 4, this::writeLocalEntry)
+                : new BoundedPipeline<>(executor, threadCount * 4, this::writeLocalEntry);
+    }
+
+    /**
+     * エントリを追加します. 圧縮はバックグラウンドで行われ, 呼び出し順に書き込まれます.
+     * 渡された配列は, 書き込みが終わるまで変更しないでください.
+     *
+     * @param name エントリ名
+     * @param data エントリの内容
+     */
+    public void write(String name, byte[] data) throws IOException
+    {
+        if (this.closed)
+            throw new IOException("Archive is already closed");
+        if (!this.names.add(name))
+            throw new ZipException("duplicate entry: " + name);
+
+        try
+        {
+            if (name.endsWith("/"))  // ディレクトリは常に格納する
+                this.pipeline.offer(this.prepare(name, data, true));
+            else
+                this.pipeline.submit(() -> this.prepare(name, data, this.stored));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + name);
+        }
+    }
+
+    /**
+     * 未書き込みのエントリを全て書き込み, セントラル・ディレクトリを書き込んでから出力先を閉じます.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        try
+        {
+            this.pipeline.finish();
+            this.writeCentralDirectory();
+            this.out.flush();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing the archive");
+        }
+        finally
+        {
+            this.pipeline.close();
+            Deflater deflater;
+            while ((deflater = this.deflaters.poll()) != null)
+                deflater.end();
+
+            this.out.close();
+        }
+    }
+
+    private CompressedEntry prepare(String name, byte[] data, boolean store)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        byte[] compressed = store ? data: this.deflate(data);
+        return new CompressedEntry(
+                name.getBytes(StandardCharsets.UTF_8),
+                store ? ZipEntry.STORED: ZipEntry.DEFLATED,
+                crc.getValue(),
+                data.length,
+                compressed
+        );
+    }
+
+    private byte[] deflate(byte[] data)
+    {
+        Deflater deflater = this.deflaters.poll();
+        if (deflater == null)
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] buffer = new byte[Math.max(64, data.length / 2 + 64)];
+            int length = 0;
+            while (!deflater.finished())
+            {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            return length == buffer.length ? buffer: Arrays.copyOf(buffer, length);
+        }
+        finally
+        {
+            deflater.reset();
+            this.deflaters.add(deflater);
+        }
+    }
+
+    private void writeLocalEntry(CompressedEntry entry) throws IOException
+    {
+        entry.offset = this.out.getCount();
+
+        this.writeInt(LOC_SIGNATURE);
+        this.writeShort(VERSION);
+        this.writeShort(FLAG_UTF8);
+        this.writeShort(entry.method);
+        this.writeInt(this.dosTime);
+        this.writeInt((int) entry.crc);
+        this.writeInt(entry.data.length);
+        this.writeInt(entry.size);
+        this.writeShort(entry.name.length);
+        this.writeShort(0);
+        this.out.write(entry.name);
+        this.out.write(entry.data);
+
+        // 書き込んだデータは, セントラル・ディレクトリのために保持する必要はない
+        entry.data = null;
+        this.writtenEntries.add(entry);
+    }
+
+    private void writeCentralDirectory() throws IOException
+    {
+        long directoryOffset = this.out.getCount();
+        for (CompressedEntry entry : this.writtenEntries)
+        {
+            boolean zip64 = entry.offset >= ZIP64_MAGIC;
+
+            this.writeInt(CEN_SIGNATURE);
+            this.writeShort(zip64 ? VERSION_ZIP64: VERSION);
+            this.writeShort(zip64 ? VERSION_ZIP64: VERSION);
+            this.writeShort(FLAG_UTF8);
+            this.writeShort(entry.method);
+            this.writeInt(this.dosTime);
+            this.writeInt((int) entry.crc);
+            this.writeInt(entry.compressedSize);
+            this.writeInt(entry.size);
+            this.writeShort(entry.name.length);
+            this.writeShort(zip64 ? 12: 0);
+            this.writeShort(0);  // comment
+            this.writeShort(0);  // disk
+            this.writeShort(0);  // internal attributes
+            this.writeInt(0);  // external attributes
+            this.writeInt(zip64 ? (int) ZIP64_MAGIC: (int) entry.offset);
+            this.out.write(entry.name);
+            if (zip64)
+            {
+                this.writeShort(ZIP64_EXTRA_ID);
+                this.writeShort(8);
+                this.writeLong(entry.offset);
+            }
+        }
+
+        long directoryEnd = this.out.getCount();
+        long directorySize = directoryEnd - directoryOffset;
+        int count = this.writtenEntries.size();
+
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT
+                || directoryOffset >= ZIP64_MAGIC
+                || directorySize >= ZIP64_MAGIC;
+        if (zip64)
+        {
+            this.writeInt(ZIP64_EOCD_SIGNATURE);
+            this.writeLong(44);  // この後のレコードのサイズ
+            this.writeShort(VERSION_ZIP64);
+            this.writeShort(VERSION_ZIP64);
+            this.writeInt(0);
+            this.writeInt(0);
+            this.writeLong(count);
+            this.writeLong(count);
+            this.writeLong(directorySize);
+            this.writeLong(directoryOffset);
+
+            this.writeInt(ZIP64_EOCD_LOCATOR_SIGNATURE);
+            this.writeInt(0);
+            this.writeLong(directoryEnd);
+            this.writeInt(1);
+        }
+
+        this.writeInt(EOCD_SIGNATURE);
+        this.writeShort(0);
+        this.writeShort(0);
+        this.writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        this.writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        this.writeInt((int) Math.min(directorySize, ZIP64_MAGIC));
+        this.writeInt((int) Math.min(directoryOffset, ZIP64_MAGIC));
+        this.writeShort(0);
+    }
+
+    private void writeShort(int value) throws IOException
+    {
+        this.out.write(value & 0xFF);
+        this.out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(int value) throws IOException
+    {
+        this.writeShort(value);
+        this.writeShort(value >>> 16);
+    }
+
+    private void writeLong(long value) throws IOException
+    {
+        this.writeInt((int) value);
+        this.writeInt((int) (value >>> 32));
+    }
+
+    private static int toDosTime(LocalDateTime time)
+    {
+        if (time.getYear() < 1980)
+            return (1 << 21) | (1 << 16);
+
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+
+    private static class CompressedEntry
+    {
+        private final byte[] name;
+        private final int method;
+        private final long crc;
+        private final int size;
+        private final int compressedSize;
+        private byte[] data;
+        private long offset;
+
+        private CompressedEntry(byte[] name, int method, long crc, int size, byte[] data)
+        {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = data.length;
+            this.data = data;
+        }
+    }
+}
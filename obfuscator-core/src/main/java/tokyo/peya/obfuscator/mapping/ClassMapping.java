@@ -1,6 +1,6 @@
 /*
  * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
- * Copyright (c) 2023-2025 Peyang
+ * Copyright (c) 2025 Peyang
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
  *
@@ -9,28 +9,36 @@
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
-package tokyo.peya.obfuscator.utils;
 
-import java.util.regex.Pattern;
+package tokyo.peya.obfuscator.mapping;
 
-public class ExcludePattern
-{
-    public static Pattern compileExcludePattern(String pattern)
-    {
-        // パッケージ名の基礎を変える。(内部では / で扱うため)
-        String convertedPattern = pattern.replace(".", "/");
+import lombok.Getter;
 
-        // ワイルドカードを正規表現に変換
-        convertedPattern = convertedPattern
-                .replaceAll("\\*\\*\\.", ".*")  // **. => .*
-                .replaceAll("\\*\\*", ".+")   // ** => .+
-                .replaceAll("\\*", "[^/]+");  // * => [^/]*
+import java.util.ArrayList;
+import java.util.List;
 
-        // バックスラッシュがあるとバグるので。
-        convertedPattern = convertedPattern.replace("\\", "\\\\");
+/**
+ * クラスと, そのメンバの名前の対応.
+ * 名前はいずれも内部名（{@code a/b/C}）です.
+ */
+@Getter
+public class ClassMapping
+{
+    private final String name;
+    private final List<MemberMapping> fields;
+    private final List<MemberMapping> methods;
+    private String mappedName;
 
-        convertedPattern = "^" + convertedPattern + "$"; // 完全一致にする
+    ClassMapping(String name, String mappedName)
+    {
+        this.name = name;
+        this.mappedName = mappedName;
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
 
-        return Pattern.compile(convertedPattern);
+    void setMappedName(String mappedName)
+    {
+        this.mappedName = mappedName;
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.mapping;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Locale;
+
+/**
+ * 名前の対応表の書式.
+ */
+@Getter
+@AllArgsConstructor
+public enum MappingFormat
+{
+    /**
+     * {@code CL:}, {@code FD:}, {@code MD:} の行からなる SRG 形式.
+     */
+    SRG("srg"),
+    /**
+     * ProGuard / R8 の {@code mapping.txt} 形式.
+     */
+    PROGUARD("proguard"),
+    /**
+     * Fabric などで使われる Tiny v2 形式.
+     */
+    TINY_V2("tiny");
+
+    private final String id;
+
+    /**
+     * 設定値から書式を求めます. 空の場合は {@link #SRG} です.
+     *
+     * @param id 書式の ID
+     * @return 書式
+     * @throws IllegalArgumentException 不明な書式の場合
+     */
+    public static MappingFormat fromId(String id)
+    {
+        if (id == null || id.isBlank())
+            return SRG;
+
+        String normalised = id.trim().toLowerCase(Locale.ROOT);
+        for (MappingFormat format : values())
+            if (format.id.equals(normalised))
+                return format;
+
+        throw new IllegalArgumentException("Unknown mapping format: " + id);
+    }
+
+    /**
+     * 最初の空でない行から書式を推定します.
+     *
+     * @param firstLine 最初の空でない行
+     * @return 書式, 推定できない場合は {@code null}
+     */
+    public static MappingFormat detect(String firstLine)
+    {
+        if (firstLine.startsWith("tiny\t2\t"))
+            return TINY_V2;
+        else if (firstLine.startsWith("CL: ") || firstLine.startsWith("FD: ")
+                || firstLine.startsWith("MD: ") || firstLine.startsWith("PK: "))
+            return SRG;
+        else if (firstLine.contains(" -> ") && firstLine.endsWith(":"))
+            return PROGUARD;
+
+        return null;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@link MappingWriter} が書き出した対応表を読み込みます.
+ * 書式は最初の空でない行から推定されます.
+ */
+public class MappingReader
+{
+    private final BufferedReader reader;
+    private final Mappings mappings;
+    private int lineNumber;
+
+    private MappingReader(BufferedReader reader)
+    {
+        this.reader = reader;
+        this.mappings = new Mappings();
+    }
+
+    /**
+     * ファイルから対応表を読み込みます.
+     *
+     * @param file 読み込むファイル
+     * @return 対応表
+     * @throws IOException 読み込みに失敗した場合, または書式が不正な場合
+     */
+    public static Mappings read(Path file) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            return read(reader);
+        }
+    }
+
+    public static Mappings read(BufferedReader reader) throws IOException
+    {
+        return new MappingReader(reader).read();
+    }
+
+    private Mappings read() throws IOException
+    {
+        String line = this.nextLine();
+        if (line == null)
+            return this.mappings;
+
+        MappingFormat format = MappingFormat.detect(line);
+        if (format == null)
+            throw this.malformed(line);
+
+        ClassMapping current = null;
+        do
+        {
+            switch (format)
+            {
+                case SRG -> this.readSrgLine(line);
+                case PROGUARD -> current = this.readProGuardLine(line, current);
+                case TINY_V2 -> current = this.readTinyLine(line, current);
+            }
+        }
+        while ((line = this.nextLine()) != null);
+
+        return this.mappings;
+    }
+
+    private String nextLine() throws IOException
+    {
+        String line;
+        do
+        {
+            line = this.reader.readLine();
+            this.lineNumber++;
+        }
+        while (line != null && (line.isBlank() || line.startsWith("#")));
+
+        return line;
+    }
+
+    private void readSrgLine(String line) throws IOException
+    {
+        String[] parts = line.split(" ");
+        switch (parts[0])
+        {
+            case "PK:" ->
+            {
+                // パッケージの対応は, クラスの対応から求まるため読み飛ばす
+            }
+            case "CL:" ->
+            {
+                this.expectLength(line, parts, 3);
+                this.mappings.getOrCreateClass(parts[1]).setMappedName(parts[2]);
+            }
+            case "FD:" ->
+            {
+                this.expectLength(line, parts, 3);
+                int ownerEnd = parts[1].lastIndexOf('/');
+                int mappedOwnerEnd = parts[2].lastIndexOf('/');
+                this.getOwner(parts[1], ownerEnd, parts[2], mappedOwnerEnd).getFields().add(new MemberMapping(
+                        parts[1].substring(ownerEnd + 1),
+                        null,
+                        parts[2].substring(mappedOwnerEnd + 1)
+                ));
+            }
+            case "MD:" ->
+            {
+                this.expectLength(line, parts, 5);
+                int ownerEnd = parts[1].lastIndexOf('/');
+                int mappedOwnerEnd = parts[3].lastIndexOf('/');
+                this.getOwner(parts[1], ownerEnd, parts[3], mappedOwnerEnd).getMethods().add(new MemberMapping(
+                        parts[1].substring(ownerEnd + 1),
+                        parts[2],
+                        parts[3].substring(mappedOwnerEnd + 1)
+                ));
+            }
+            default -> throw this.malformed(line);
+        }
+    }
+
+    private ClassMapping getOwner(String member, int ownerEnd, String mappedMember, int mappedOwnerEnd)
+    {
+        if (ownerEnd < 0)
+            return this.mappings.getOrCreateClass("");
+
+        ClassMapping owner = this.mappings.getOrCreateClass(member.substring(0, ownerEnd));
+        if (owner.getName().equals(owner.getMappedName()) && mappedOwnerEnd >= 0)
+            owner.setMappedName(mappedMember.substring(0, mappedOwnerEnd));
+
+        return owner;
+    }
+
+    private ClassMapping readProGuardLine(String line, ClassMapping current) throws IOException
+    {
+        int arrow = line.indexOf(" -> ");
+        if (arrow < 0)
+            throw this.malformed(line);
+
+        if (!Character.isWhitespace(line.charAt(0)))
+        {
+            if (!line.endsWith(":"))
+                throw this.malformed(line);
+
+            ClassMapping clazz = this.mappings.getOrCreateClass(line.substring(0, arrow).replace('.', '/'));
+            clazz.setMappedName(line.substring(arrow + 4, line.length() - 1).replace('.', '/'));
+            return clazz;
+        }
+        else if (current == null)
+            throw this.malformed(line);
+
+        String member = line.substring(0, arrow).trim();
+        String mappedName = line.substring(arrow + 4).trim();
+
+        // R8 は行番号の範囲を先頭に付ける: "1:5:void foo() -> a"
+        int lastColon = member.lastIndexOf(':', member.indexOf(' '));
+        if (lastColon >= 0)
+            member = member.substring(lastColon + 1);
+
+        int typeEnd = member.indexOf(' ');
+        if (typeEnd < 0)
+            throw this.malformed(line);
+
+        String type = member.substring(0, typeEnd);
+        String name = member.substring(typeEnd + 1);
+        int argsStart = name.indexOf('(');
+        if (argsStart < 0)
+        {
+            current.getFields().add(new MemberMapping(name, toDescriptor(type), mappedName));
+            return current;
+        }
+
+        int argsEnd = name.indexOf(')', argsStart);
+        if (argsEnd < 0)
+            throw this.malformed(line);
+
+        StringBuilder descriptor = new StringBuilder("(");
+        String arguments = name.substring(argsStart + 1, argsEnd);
+        if (!arguments.isEmpty())
+            for (String argument : arguments.split(","))
+                descriptor.append(toDescriptor(argument.trim()));
+        descriptor.append(')').append(toDescriptor(type));
+
+        current.getMethods().add(new MemberMapping(name.substring(0, argsStart), descriptor.toString(), mappedName));
+        return current;
+    }
+
+    private ClassMapping readTinyLine(String line, ClassMapping current) throws IOException
+    {
+        String[] parts = line.split("\t", -1);
+        if (parts[0].equals("tiny"))
+            return current;
+        else if (parts[0].equals("c"))
+        {
+            this.expectLength(line, parts, 3);
+            ClassMapping clazz = this.mappings.getOrCreateClass(parts[1]);
+            clazz.setMappedName(parts[2]);
+            return clazz;
+        }
+        else if (!parts[0].isEmpty() || current == null)
+            throw this.malformed(line);
+
+        // メンバの行は 1 段の字下げ. 2 段以上（引数やコメント）は読み飛ばす
+        if (parts[1].equals("f") || parts[1].equals("m"))
+        {
+            this.expectLength(line, parts, 5);
+            List<MemberMapping> members = parts[1].equals("f") ? current.getFields(): current.getMethods();
+            members.add(new MemberMapping(parts[3], parts[2], parts[4]));
+        }
+
+        return current;
+    }
+
+    private void expectLength(String line, String[] parts, int length) throws IOException
+    {
+        if (parts.length < length)
+            throw this.malformed(line);
+    }
+
+    private IOException malformed(String line)
+    {
+        return new IOException("Malformed mapping at line " + this.lineNumber + ": " + line);
+    }
+
+    private static String toDescriptor(String javaType)
+    {
+        int dimensions = 0;
+        while (javaType.endsWith("[]"))
+        {
+            javaType = javaType.substring(0, javaType.length() - 2);
+            dimensions++;
+        }
+
+        String element = switch (javaType)
+        {
+            case "void" -> "V";
+            case "boolean" -> "Z";
+            case "byte" -> "B";
+            case "char" -> "C";
+            case "short" -> "S";
+            case "int" -> "I";
+            case "long" -> "J";
+            case "float" -> "F";
+            case "double" -> "D";
+            default -> "L" + javaType.replace('.', '/') + ";";
+        };
+
+        return "[".repeat(dimensions) + element;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.mapping;
+
+import org.objectweb.asm.Type;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 名前の対応表を書き出します.
+ * 各行は中間の配列を作らずに, そのままバッファ付きのライタに書き込まれます.
+ */
+public class MappingWriter
+{
+    private final Writer writer;
+    private final MappingFormat format;
+
+    public MappingWriter(Writer writer, MappingFormat format)
+    {
+        this.writer = writer;
+        this.format = format;
+    }
+
+    /**
+     * 対応表をファイルに書き出します.
+     *
+     * @param mappings 対応表
+     * @param format   書式
+     * @param file     書き出し先
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static void write(Mappings mappings, MappingFormat format, Path file) throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            new MappingWriter(writer, format).write(mappings);
+        }
+    }
+
+    public void write(Mappings mappings) throws IOException
+    {
+        switch (this.format)
+        {
+            case SRG -> this.writeSrg(mappings);
+            case PROGUARD -> this.writeProGuard(mappings);
+            case TINY_V2 -> this.writeTiny(mappings);
+        }
+
+        this.writer.flush();
+    }
+
+    private void writeSrg(Mappings mappings) throws IOException
+    {
+        for (ClassMapping clazz : mappings.getClasses())
+            this.line("CL: ", clazz.getName(), " ", clazz.getMappedName());
+
+        for (ClassMapping clazz : mappings.getClasses())
+        {
+            for (MemberMapping field : clazz.getFields())
+                this.line(
+                        "FD: ", clazz.getName(), "/", field.getName(), " ",
+                        clazz.getMappedName(), "/", field.getMappedName()
+                );
+            for (MemberMapping method : clazz.getMethods())
+                this.line(
+                        "MD: ", clazz.getName(), "/", method.getName(), " ", method.getDescriptor(), " ",
+                        clazz.getMappedName(), "/", method.getMappedName(), " ",
+                        mappings.mapDescriptor(method.getDescriptor())
+                );
+        }
+    }
+
+    private void writeProGuard(Mappings mappings) throws IOException
+    {
+        for (ClassMapping clazz : mappings.getClasses())
+        {
+            this.line(toJavaName(clazz.getName()), " -> ", toJavaName(clazz.getMappedName()), ":");
+
+            for (MemberMapping field : clazz.getFields())
+                this.line(
+                        "    ", Type.getType(field.getDescriptor()).getClassName(), " ",
+                        field.getName(), " -> ", field.getMappedName()
+                );
+            for (MemberMapping method : clazz.getMethods())
+                this.line(
+                        "    ", toJavaSignature(method.getName(), method.getDescriptor()),
+                        " -> ", method.getMappedName()
+                );
+        }
+    }
+
+    private void writeTiny(Mappings mappings) throws IOException
+    {
+        this.line("tiny\t2\t0\toriginal\tobfuscated");
+        for (ClassMapping clazz : mappings.getClasses())
+        {
+            this.line("c\t", clazz.getName(), "\t", clazz.getMappedName());
+
+            for (MemberMapping field : clazz.getFields())
+                this.line("\tf\t", field.getDescriptor(), "\t", field.getName(), "\t", field.getMappedName());
+            for (MemberMapping method : clazz.getMethods())
+                this.line("\tm\t", method.getDescriptor(), "\t", method.getName(), "\t", method.getMappedName());
+        }
+    }
+
+    private void line(String... parts) throws IOException
+    {
+        for (String part : parts)
+            this.writer.write(part);
+        this.writer.write('\n');
+    }
+
+    private static String toJavaName(String internalName)
+    {
+        return internalName.replace('/', '.');
+    }
+
+    private static String toJavaSignature(String name, String descriptor)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(Type.getReturnType(descriptor).getClassName()).append(' ').append(name).append('(');
+
+        Type[] arguments = Type.getArgumentTypes(descriptor);
+        for (int i = 0; i < arguments.length; i++)
+        {
+            if (i > 0)
+                builder.append(',');
+            builder.append(arguments[i].getClassName());
+        }
+
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.mapping;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 元の名前から難読化後の名前への対応表.
+ * クラスは元の名前順に, メンバは追加された順に保持されます.
+ */
+public class Mappings
+{
+    private static final Comparator<MemberMapping> MEMBER_ORDER =
+            Comparator.comparing(MemberMapping::getName)
+                      .thenComparing(MemberMapping::getDescriptor, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<String, ClassMapping> classes;
+
+    public Mappings()
+    {
+        this.classes = new TreeMap<>();
+    }
+
+    /**
+     * 名前の難読化で作られる対応表から構築します.
+     * キーは {@code クラス}, {@code クラス.メソッド名記述子}, {@code クラス.フィールド名.記述子} のいずれかです.
+     *
+     * @param mappings 対応表
+     * @return 構築した対応表
+     */
+    public static Mappings fromFlat(Map<String, String> mappings)
+    {
+        Mappings result = new Mappings();
+        mappings.forEach((key, newName) -> {
+            int ownerEnd = key.indexOf('.');
+            if (ownerEnd < 0)
+            {
+                result.getOrCreateClass(key).setMappedName(newName);
+                return;
+            }
+
+            ClassMapping owner = result.getOrCreateClass(key.substring(0, ownerEnd));
+            String member = key.substring(ownerEnd + 1);
+            int descStart = member.indexOf('(');
+            if (descStart >= 0)
+            {
+                owner.getMethods().add(new MemberMapping(
+                        member.substring(0, descStart),
+                        member.substring(descStart),
+                        newName
+                ));
+                return;
+            }
+
+            int nameEnd = member.indexOf('.');
+            if (nameEnd >= 0)
+                owner.getFields().add(new MemberMapping(
+                        member.substring(0, nameEnd),
+                        member.substring(nameEnd + 1),
+                        newName
+                ));
+        });
+
+        for (ClassMapping mapping : result.classes.values())
+        {
+            mapping.getFields().sort(MEMBER_ORDER);
+            mapping.getMethods().sort(MEMBER_ORDER);
+        }
+
+        return result;
+    }
+
+    ClassMapping getOrCreateClass(String name)
+    {
+        return this.classes.computeIfAbsent(name, n -> new ClassMapping(n, n));
+    }
+
+    public ClassMapping getClass(String name)
+    {
+        return this.classes.get(name);
+    }
+
+    public Collection<ClassMapping> getClasses()
+    {
+        return Collections.unmodifiableCollection(this.classes.values());
+    }
+
+    /**
+     * 内部名を難読化後の名前に変換します. 対応がない場合はそのまま返します.
+     */
+    public String mapType(String name)
+    {
+        ClassMapping mapping = this.classes.get(name);
+        return mapping == null ? name: mapping.getMappedName();
+    }
+
+    /**
+     * 記述子に含まれるクラス名を難読化後の名前に変換します.
+     */
+    public String mapDescriptor(String descriptor)
+    {
+        if (descriptor.indexOf('L') < 0)
+            return descriptor;
+
+        StringBuilder builder = new StringBuilder(descriptor.length());
+        int i = 0;
+        while (i < descriptor.length())
+        {
+            char c = descriptor.charAt(i);
+            if (c != 'L')
+            {
+                builder.append(c);
+                i++;
+                continue;
+            }
+
+            int end = descriptor.indexOf(';', i);
+            builder.append('L').append(this.mapType(descriptor.substring(i + 1, end))).append(';');
+            i = end + 1;
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 難読化後のスタックトレースを, 対応表を使って元の名前に戻します.
+ * 難読化後のクラス名と, {@code クラス名.メソッド名} の形の語が置き換えられます.
+ * 同じ名前に複数のメソッドが対応する場合は, 候補を {@code |} で区切って表示します.
+ */
+public class Retracer
+{
+    private final Map<String, String> classes;
+    private final Map<String, Map<String, Set<String>>> methods;
+
+    public Retracer(Mappings mappings)
+    {
+        this.classes = new HashMap<>();
+        this.methods = new HashMap<>();
+
+        for (ClassMapping clazz : mappings.getClasses())
+        {
+            String originalName = clazz.getName().replace('/', '.');
+            String mappedName = clazz.getMappedName().replace('/', '.');
+            this.classes.put(mappedName, originalName);
+
+            if (clazz.getMethods().isEmpty())
+                continue;
+
+            Map<String, Set<String>> methodNames = this.methods.computeIfAbsent(mappedName, k -> new HashMap<>());
+            for (MemberMapping method : clazz.getMethods())
+                methodNames.computeIfAbsent(method.getMappedName(), k -> new LinkedHashSet<>()).add(method.getName());
+        }
+    }
+
+    public void retrace(BufferedReader in, Writer out) throws IOException
+    {
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            out.write(this.retraceLine(line));
+            out.write('\n');
+        }
+
+        out.flush();
+    }
+
+    public String retraceLine(String line)
+    {
+        StringBuilder builder = new StringBuilder(line.length());
+        int i = 0;
+        while (i < line.length())
+        {
+            int start = i;
+            while (i < line.length() && isNamePart(line.charAt(i)))
+                i++;
+
+            if (start == i)
+                builder.append(line.charAt(i++));
+            else
+                builder.append(this.retraceWord(line.substring(start, i)));
+        }
+
+        return builder.toString();
+    }
+
+    private String retraceWord(String word)
+    {
+        String clazz = this.classes.get(word);
+        if (clazz != null)
+            return clazz;
+
+        int memberStart = word.lastIndexOf('.');
+        if (memberStart < 0)
+            return word;
+
+        String owner = word.substring(0, memberStart);
+        String ownerOriginal = this.classes.get(owner);
+        if (ownerOriginal == null)
+            return word;
+
+        String method = word.substring(memberStart + 1);
+        Map<String, Set<String>> methodNames = this.methods.get(owner);
+        Set<String> candidates = methodNames == null ? null: methodNames.get(method);
+        if (candidates != null)
+            method = String.join("|", candidates);
+
+        return ownerOriginal + "." + method;
+    }
+
+    private static boolean isNamePart(char c)
+    {
+        return c == '.' || Character.isJavaIdentifierPart(c);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.processor;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * {@link InvokeDynamic} で置き換えた呼び出しを解決する, 共有のブートストラップです.
+ * このクラスは難読化されたプログラムに複製され, 各クラスのブートストラップメソッドから呼び出されます.
+ * <p>
+ * 呼び出し先は, クラスごとに次の配列で渡されます.
+ * <ul>
+ *     <li>{@code owners}: 呼び出し先のクラス名 (重複なし)</li>
+ *     <li>{@code names}: 呼び出し先のメンバ名</li>
+ *     <li>{@code targets}: 呼び出しの種類 (下位 3 ビット) と, {@code owners} のインデックス (残りのビット)</li>
+ *     <li>{@code ownerCache}, {@code handleCache}: 解決済みのクラスとハンドル</li>
+ * </ul>
+ * 型は呼び出し元の {@link MethodType} から求めるため, 記述子の解析は行いません.
+ * キャッシュは同期しませんが, 複数のスレッドが同時に解決しても同じ値が格納されるだけです.
+ */
+public final class InvokeDynamicResolver
+{
+    private InvokeDynamicResolver()
+    {
+    }
+
+    public static CallSite resolve(MethodHandles.Lookup lookup,
+                                   MethodType type,
+                                   int index,
+                                   String[] owners,
+                                   String[] names,
+                                   int[] targets,
+                                   Class<?>[] ownerCache,
+                                   MethodHandle[] handleCache) throws ReflectiveOperationException
+    {
+        MethodHandle handle = handleCache[index];
+        if (handle == null)
+        {
+            int target = targets[index];
+            int ownerIndex = target >>> 3;
+            Class<?> owner = ownerCache[ownerIndex];
+            if (owner == null)
+            {
+                owner = Class.forName(owners[ownerIndex], true, lookup.lookupClass().getClassLoader());
+                ownerCache[ownerIndex] = owner;
+            }
+
+            String name = names[index];
+            handle = switch (target & 7)
+            {
+                case 1 -> lookup.findStatic(owner, name, type);
+                case 2 -> lookup.findVirtual(owner, name, type.dropParameterTypes(0, 1));
+                case 3 -> lookup.findGetter(owner, name, type.returnType());
+                case 4 -> lookup.findStaticGetter(owner, name, type.returnType());
+                case 5 -> lookup.findSetter(owner, name, type.parameterType(1));
+                default -> lookup.findStaticSetter(owner, name, type.parameterType(0));
+            };
+            handleCache[index] = handle;
+        }
+
+        return new ConstantCallSite(handle.asType(type));
+    }
+}
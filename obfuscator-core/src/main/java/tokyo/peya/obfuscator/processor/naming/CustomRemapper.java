@@ -30,6 +30,11 @@ class CustomRemapper extends Remapper
     private final Map<String, Map<String, String>> mapFieldReversed;
     private final Map<String, Map<String, String>> mapMethod;
     private final Map<String, Map<String, String>> mapMethodReversed;
+    /**
+     * 型名と記述子の変換結果のキャッシュ. 対応を登録すると破棄される.
+     */
+    private final Map<String, String> mappedTypes;
+    private final Map<String, String> mappedDescs;
 
     private final Obfuscator obfuscator;
 
@@ -45,6 +50,8 @@ class CustomRemapper extends Remapper
         this.mapFieldReversed = new HashMap<>(); //name + desc
         this.mapMethod = new HashMap<>(); //name + desc
         this.mapMethodReversed = new HashMap<>(); //name + desc
+        this.mappedTypes = new HashMap<>();
+        this.mappedDescs = new HashMap<>();
     }
 
     /**
@@ -57,6 +64,9 @@ class CustomRemapper extends Remapper
      */
     public String mapMethodName(String owner, String name, String desc)
     {
+        if (this.mapMethod.isEmpty())
+            return name;
+
         Map<String, String> map = this.mapMethod.get(map(owner));
         if (map != null)
         {
@@ -121,6 +131,9 @@ class CustomRemapper extends Remapper
      */
     public String mapFieldName(String owner, String name, String desc)
     {
+        if (this.mapField.isEmpty())
+            return name;
+
         Map<String, String> map = this.mapField.get(map(owner));
         if (map != null)
         {
@@ -166,6 +179,35 @@ class CustomRemapper extends Remapper
      * Map type name to the new name. Subclasses can override.
      */
     public String map(String in)
+    {
+        String cached = this.mappedTypes.get(in);
+        if (cached != null)
+            return cached;
+
+        String mapped = this.mapType0(in);
+        this.mappedTypes.put(in, mapped);
+        return mapped;
+    }
+
+    @Override
+    public String mapDesc(String descriptor)
+    {
+        String cached = this.mappedDescs.get(descriptor);
+        if (cached != null)
+            return cached;
+
+        String mapped = super.mapDesc(descriptor);
+        this.mappedDescs.put(descriptor, mapped);
+        return mapped;
+    }
+
+    private void invalidateCaches()
+    {
+        this.mappedTypes.clear();
+        this.mappedDescs.clear();
+    }
+
+    private String mapType0(String in)
     {
         int lin = in.lastIndexOf('/');
         String className = lin == -1 ? in: in.substring(lin + 1);
@@ -209,6 +251,7 @@ class CustomRemapper extends Remapper
         {
             this.packageMapReversed.put(newPackage, oldPackage);
             this.packageMap.put(oldPackage, newPackage);
+            this.invalidateCaches();
             return true;
         }
         return false;
@@ -228,6 +271,7 @@ class CustomRemapper extends Remapper
 
         this.map.put(old, newName);
         this.mapReversed.put(newName, old);
+        this.invalidateCaches();
         this.obfuscator.getNameProvider().mapClass(old, newName);
         log.info("Mapped " + old + " to " + newName);
 //        System.out.println(map(old));
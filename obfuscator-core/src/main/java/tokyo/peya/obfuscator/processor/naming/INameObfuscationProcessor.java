@@ -21,4 +21,12 @@ import java.util.Map;
 public interface INameObfuscationProcessor
 {
     void transformPost(Obfuscator inst, NameProcessingContext ctxt, Map<ClassReference, ClassNode> nodes);
+
+    /**
+     * この処理がクラス全体を見渡して名前を書き換えるかどうかを返します.
+     * 書き換える場合, 全てのクラスをメモリ上に保持する必要があります.
+     *
+     * @return 名前の書き換えが有効な場合は {@code true}
+     */
+    boolean isEnabled();
 }
@@ -93,6 +93,12 @@ public class InnerClassRemover implements INameObfuscationProcessor, IClassTrans
         return true;
     }
 
+    @Override
+    public boolean isEnabled()
+    {
+        return V_ENABLED.get() && V_REMAP.get();
+    }
+
     @Override
     public void transformPost(Obfuscator inst, NameProcessingContext ctxt, Map<ClassReference, ClassNode> nodes)
     {
@@ -119,7 +125,9 @@ public class InnerClassRemover implements INameObfuscationProcessor, IClassTrans
 
             normalizeModifiers(newNode);
 
-            updatedClasses.put(ClassReference.of(newNode), newNode);
+            ClassReference newRef = ClassReference.of(newNode);
+            this.obfuscator.onClassRenamed(ClassReference.of(classNode), newRef);
+            updatedClasses.put(newRef, newNode);
             ctxt.incrementTotalNamesProcessed();
         }
 
@@ -11,27 +11,149 @@
 
 package tokyo.peya.obfuscator.processor.naming;
 
-import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.commons.Remapper;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Custom implementation of ASM's SimpleRemapper taking in account for field descriptions.
+ * <p>
+ * 名前の対応表（{@code クラス}, {@code クラス.メソッド名記述子}, {@code クラス.フィールド名.記述子} をキーとする）を,
+ * 構築時にクラスごとの ID と (ID, 名前, 記述子) の組をキーとする表に変換します.
+ * 参照のたびに文字列を連結することなく検索でき, 記述子の変換結果もキャッシュされます.
+ * 構築後は読み取りのみのため, 複数のスレッドで同じインスタンスを共有できます.
  *
  * @author ItzSomebody
  */
-public class MemberRemapper extends SimpleRemapper
+public class MemberRemapper extends Remapper
 {
+    private final Map<String, String> classes;
+    private final Map<String, Integer> owners;
+    private final Map<MemberKey, String> methods;
+    private final Map<MemberKey, String> fields;
+    private final Map<String, String> descriptors;
+    private final Map<String, String> methodDescriptors;
 
     MemberRemapper(final Map<String, String> mappings)
     {
-        super(mappings);
+        this.classes = new HashMap<>();
+        this.owners = new HashMap<>();
+        this.methods = new HashMap<>();
+        this.fields = new HashMap<>();
+        this.descriptors = new ConcurrentHashMap<>();
+        this.methodDescriptors = new ConcurrentHashMap<>();
+
+        mappings.forEach(this::compile);
+    }
+
+    private void compile(String key, String newName)
+    {
+        int ownerEnd = key.indexOf('.');
+        if (ownerEnd < 0)
+        {
+            this.classes.put(key, newName);
+            return;
+        }
+
+        Integer owner = this.owners.computeIfAbsent(key.substring(0, ownerEnd), k -> this.owners.size());
+        String member = key.substring(ownerEnd + 1);
+        int descStart = member.indexOf('(');
+        if (descStart >= 0)  // メソッド: 名前の直後に記述子が続く
+        {
+            this.methods.put(new MemberKey(owner, member.substring(0, descStart), member.substring(descStart)), newName);
+            return;
+        }
+
+        int nameEnd = member.indexOf('.');
+        if (nameEnd >= 0)  // フィールド: 名前と記述子は '.' で区切られる
+            this.fields.put(new MemberKey(owner, member.substring(0, nameEnd), member.substring(nameEnd + 1)), newName);
+    }
+
+    @Override
+    public String map(String key)
+    {
+        return this.classes.get(key);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String descriptor)
+    {
+        Integer ownerId = this.owners.get(owner);
+        if (ownerId == null)
+            return name;
+
+        String remappedName = this.methods.get(new MemberKey(ownerId, name, descriptor));
+        return remappedName != null ? remappedName: name;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String descriptor)
+    {
+        Integer ownerId = this.owners.get(owner);
+        if (ownerId == null)
+            return name;
+
+        String remappedName = this.fields.get(new MemberKey(ownerId, name, descriptor));
+        return remappedName != null ? remappedName: name;
+    }
+
+    @Override
+    public String mapDesc(String descriptor)
+    {
+        String cached = this.descriptors.get(descriptor);
+        if (cached != null)
+            return cached;
+
+        String mapped = super.mapDesc(descriptor);
+        this.descriptors.putIfAbsent(descriptor, mapped);
+        return mapped;
     }
 
     @Override
-    public String mapFieldName(String owner, String name, String desc)
+    public String mapMethodDesc(String methodDescriptor)
+    {
+        String cached = this.methodDescriptors.get(methodDescriptor);
+        if (cached != null)
+            return cached;
+
+        String mapped = super.mapMethodDesc(methodDescriptor);
+        this.methodDescriptors.putIfAbsent(methodDescriptor, mapped);
+        return mapped;
+    }
+
+    private static final class MemberKey
     {
-        String remappedName = map(owner + '.' + name + '.' + desc);
-        return (remappedName != null) ? remappedName: name;
+        private final int owner;
+        private final String name;
+        private final String descriptor;
+        private final int hash;
+
+        private MemberKey(int owner, String name, String descriptor)
+        {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.hash = (31 * owner + name.hashCode()) * 31 + descriptor.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof MemberKey that))
+                return false;
+            return this.owner == that.owner
+                    && this.name.equals(that.name)
+                    && this.descriptor.equals(that.descriptor);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hash;
+        }
     }
 }
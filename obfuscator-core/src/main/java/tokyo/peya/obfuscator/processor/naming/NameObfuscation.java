@@ -12,16 +12,14 @@
 package tokyo.peya.obfuscator.processor.naming;
 
 import lombok.extern.slf4j.Slf4j;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
 import tokyo.peya.obfuscator.Obfuscator;
+import tokyo.peya.obfuscator.cache.BuildCache;
+import tokyo.peya.obfuscator.clazz.ClassGraph;
 import tokyo.peya.obfuscator.clazz.ClassReference;
-import tokyo.peya.obfuscator.clazz.ClassTree;
 import tokyo.peya.obfuscator.clazz.ClassWrapper;
 import tokyo.peya.obfuscator.clazz.FieldWrapper;
 import tokyo.peya.obfuscator.clazz.MethodWrapper;
@@ -31,28 +29,28 @@ import tokyo.peya.obfuscator.configuration.values.BooleanValue;
 import tokyo.peya.obfuscator.configuration.values.EnabledValue;
 import tokyo.peya.obfuscator.configuration.values.FilePathValue;
 import tokyo.peya.obfuscator.configuration.values.StringValue;
+import tokyo.peya.obfuscator.mapping.MappingFormat;
+import tokyo.peya.obfuscator.mapping.MappingWriter;
+import tokyo.peya.obfuscator.mapping.Mappings;
 import tokyo.peya.obfuscator.processor.Packager;
 import tokyo.peya.obfuscator.state.NameProcessingContext;
-import tokyo.peya.obfuscator.utils.ExcludePattern;
+import tokyo.peya.obfuscator.utils.ExcludeMatcher;
 import tokyo.peya.obfuscator.utils.NameUtils;
 import tokyo.peya.obfuscator.utils.NodeUtils;
 import tokyo.peya.obfuscator.utils.Utils;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 @Slf4j(topic = "Processor/Name/NameObfuscation")
 public class NameObfuscation implements INameObfuscationProcessor
@@ -174,14 +172,23 @@ public class NameObfuscation implements INameObfuscationProcessor
             "mappings_file_to_save",
             "ui.transformers.name.mappings_file",
             DeprecationLevel.AVAILABLE,
-            null
+            ""
+    );
+    private static final StringValue V_MAPPINGS_FORMAT = new StringValue(
+            PROCESSOR_NAME,
+            "mappings_format",
+            "ui.transformers.name.mappings_format",
+            DeprecationLevel.AVAILABLE,
+            MappingFormat.SRG.getId()
     );
     private final Obfuscator obfuscator;
-    private final List<Pattern> excludedClassesPatterns = new ArrayList<>();
-    private final List<Pattern> excludedMethodsPatterns = new ArrayList<>();
-    private final List<Pattern> excludedFieldsPatterns = new ArrayList<>();
+    private ExcludeMatcher excludedClasses;
+    private ExcludeMatcher excludedMethods;
+    private ExcludeMatcher excludedFields;
     private List<String> packageNames;
     private List<String> sourceFileNames;
+    private ClassGraph hierarchy;
+    private OverrideGroups overrideGroups;
 
     static
     {
@@ -238,27 +245,32 @@ public class NameObfuscation implements INameObfuscationProcessor
 
     private void compileExcludePatterns()
     {
-        for (String s : V_EXCLUDED_CLASSES.get().split("\n"))
-            this.excludedClassesPatterns.add(ExcludePattern.compileExcludePattern(s));
-        for (String s : V_EXCLUDED_METHODS.get().split("\n"))
-            this.excludedMethodsPatterns.add(ExcludePattern.compileExcludePattern(s));
-        for (String s : V_EXCLUDED_FIELDS.get().split("\n"))
-            this.excludedFieldsPatterns.add(ExcludePattern.compileExcludePattern(s));
+        this.excludedClasses = ExcludeMatcher.compile(V_EXCLUDED_CLASSES.get());
+        this.excludedMethods = ExcludeMatcher.compile(V_EXCLUDED_METHODS.get());
+        this.excludedFields = ExcludeMatcher.compile(V_EXCLUDED_FIELDS.get());
     }
 
     private List<ClassWrapper> buildHierarchies(Collection<? extends ClassNode> nodes, boolean ifAcceptMissingLib)
     {
-        List<ClassWrapper> classWrappers = new ArrayList<>();
+        List<ClassNode> classNodes = new ArrayList<>(nodes);
+        ClassWrapper[] classWrappers = new ClassWrapper[classNodes.size()];
+        // 階層の解決と名前の書き換えにしか使わず, クラスパスにも登録しないため, バイト列は持たせない
+        this.obfuscator.getScheduler().forEach(
+                IntStream.range(0, classNodes.size()).boxed().toList(),
+                i -> classWrappers[i] = new ClassWrapper(classNodes.get(i), false, null)
+        );
 
-        for (ClassNode value : nodes)
-        {
-            ClassWrapper cw = new ClassWrapper(value, false, new byte[0]);
-            classWrappers.add(cw);
+        List<ClassWrapper> result = Arrays.asList(classWrappers);
+        this.hierarchy = this.obfuscator.buildHierarchy(result, ifAcceptMissingLib);
+        this.overrideGroups = OverrideGroups.build(this.hierarchy, this.obfuscator.getScheduler());
 
-            this.obfuscator.buildHierarchy(cw, null, ifAcceptMissingLib);
-        }
+        return result;
+    }
 
-        return classWrappers;
+    @Override
+    public boolean isEnabled()
+    {
+        return V_ENABLED.get();
     }
 
     @Override
@@ -284,10 +296,14 @@ public class NameObfuscation implements INameObfuscationProcessor
             this.setupRandomizers();
             this.processClasses(classWrappers, mappings);
 
+            BuildCache buildCache = this.obfuscator.getBuildCache();
+            if (buildCache != null)
+                buildCache.putMappings(mappings);
+
             if (V_SAVE_MAPPINGS.get())
             {
                 String mappingFile = V_MAPPINGS_FILE_TO_SAVE.get();
-                if (mappingFile == null)
+                if (mappingFile == null || mappingFile.isEmpty())
                     mappingFile = this.obfuscator.getConfig().getMapping();
                 if (mappingFile != null)
                     this.saveMappingsFile(mappingFile, mappings);
@@ -308,9 +324,11 @@ public class NameObfuscation implements INameObfuscationProcessor
         }
         finally
         {
-            this.excludedClassesPatterns.clear();
-            this.excludedMethodsPatterns.clear();
-            this.excludedFieldsPatterns.clear();
+            this.hierarchy = null;
+            this.overrideGroups = null;
+            this.excludedClasses = null;
+            this.excludedMethods = null;
+            this.excludedFields = null;
         }
     }
 
@@ -349,23 +367,46 @@ public class NameObfuscation implements INameObfuscationProcessor
             return;
         }
 
-        String packageName;
-        if (V_RANDOM_PACKAGE.get())
-            packageName = generateRandomPackage(clazz.originalRef.getPackage());
+        ClassReference newName;
+        String previousName = this.getPreviousName(clazz.originalRef.getFullQualifiedName());
+        if (previousName == null || previousName.equals(clazz.originalRef.getFullQualifiedName()))
+            newName = ClassReference.of(this.generatePackageName(clazz), this.obfuscator.getNameProvider().generateClassName());
         else
-        {
-            packageName = clazz.originalRef.getPackage();
-            if (!(packageName.isEmpty() || packageName.endsWith("/")))
-                packageName = packageName + "/";
-        }
+            newName = ClassReference.of(previousName);  // 前回の実行と同じ名前を使う
 
-        ClassReference newName = ClassReference.of(packageName, this.obfuscator.getNameProvider().generateClassName());
         mappings.put(clazz.originalRef.getFullQualifiedName(), newName.getFullQualifiedName());
 
         if (clazz.originalRef.equals(this.obfuscator.getMainClass()))  // MANIFEST.MFの改変のため
             this.obfuscator.setMainClass(newName);
     }
 
+    private String generatePackageName(ClassWrapper clazz)
+    {
+        if (V_RANDOM_PACKAGE.get())
+            return generateRandomPackage(clazz.originalRef.getPackage());
+
+        String packageName = clazz.originalRef.getPackage();
+        if (!(packageName.isEmpty() || packageName.endsWith("/")))
+            packageName = packageName + "/";
+
+        return packageName;
+    }
+
+    /**
+     * 差分難読化が有効な場合に, 前回の実行で付けた名前を返します.
+     *
+     * @param key 名前の対応表のキー
+     * @return 前回の名前. 無い場合は {@code null}
+     */
+    private String getPreviousName(String key)
+    {
+        BuildCache buildCache = this.obfuscator.getBuildCache();
+        if (buildCache == null)
+            return null;
+
+        return buildCache.getPreviousMappings().get(key);
+    }
+
     private void assignRandomSourceNameToClass(ClassNode node)
     {
         boolean isSourceNameSpecified = !this.sourceFileNames.isEmpty();
@@ -391,16 +432,17 @@ public class NameObfuscation implements INameObfuscationProcessor
 
     private void processMethods(ClassWrapper classWrapper, Map<String, String> mappings)
     {
+        int id = this.hierarchy.getId(classWrapper.originalRef);
         Predicate<MethodWrapper> isExclude = method ->
                 isMethodExcluded(classWrapper.originalRef.getFullQualifiedDotName(), method)
-                        || !canRenameMethodTree(mappings, new HashSet<>(), method, classWrapper.originalRef);
+                        || !this.overrideGroups.canRenameMethod(id, method.methodNode);
 
         classWrapper.methods.stream()
                             .filter(isExclude.negate())
-                            .forEach(methodWrapper -> this.processMethod(methodWrapper, classWrapper, mappings));
+                            .forEach(methodWrapper -> this.processMethod(methodWrapper, classWrapper, id, mappings));
     }
 
-    private void processMethod(MethodWrapper methodWrapper, ClassWrapper ownerClass, Map<String, String> mappings)
+    private void processMethod(MethodWrapper methodWrapper, ClassWrapper ownerClass, int id, Map<String, String> mappings)
     {
         if (Modifier.isPrivate(methodWrapper.methodNode.access) || Modifier.isProtected(methodWrapper.methodNode.access))
         {
@@ -412,40 +454,49 @@ public class NameObfuscation implements INameObfuscationProcessor
         if (Modifier.isNative(methodWrapper.methodNode.access))
             log.warn("Native method found in class " + ownerClass.originalRef + " method " + methodWrapper.methodNode.name + methodWrapper.methodNode.desc);
         else
-            this.renameMethodTree(
-                    mappings,
-                    new HashSet<>(),
-                    methodWrapper,
-                    ownerClass.originalRef,
-                    this.obfuscator.getNameProvider()
-                                   .generateMethodName(ownerClass.classNode, methodWrapper.originalDescription)
-            );
+        {
+            String key = ownerClass.originalRef.getFullQualifiedName() + '.'
+                    + methodWrapper.originalName + methodWrapper.originalDescription;
+            if (mappings.containsKey(key))
+                return;  // オーバーライドのグループとして, 既に名前が決まっている
+
+            String newName = this.getPreviousName(key);
+            if (newName == null)
+                newName = this.obfuscator.getNameProvider()
+                                         .generateSharedMethodName(ownerClass.classNode, methodWrapper.originalDescription);
+
+            this.renameMethodGroup(mappings, methodWrapper, id, newName);
+        }
     }
 
     private void processFields(ClassWrapper classWrapper, Map<String, String> mappings)
     {
+        int id = this.hierarchy.getId(classWrapper.originalRef);
         Predicate<FieldWrapper> isExclude = field ->
                 isFieldExcluded(classWrapper.originalRef.getFullQualifiedDotName(), field)
-                        || !canRenameFieldTree(mappings, new HashSet<>(), field, classWrapper.originalRef);
+                        || !this.overrideGroups.canRenameField(id, field.originalName, field.originalDescription);
 
         classWrapper.fields.stream()
                            .filter(isExclude.negate())
-                           .forEach(fieldWrapper -> processField(fieldWrapper, classWrapper, mappings));
+                           .forEach(fieldWrapper -> processField(fieldWrapper, classWrapper, id, mappings));
     }
 
-    private void processField(FieldWrapper field, ClassWrapper ownerClass, Map<String, String> mappings)
+    private void processField(FieldWrapper field, ClassWrapper ownerClass, int id, Map<String, String> mappings)
     {
         field.fieldNode.access &= ~Opcodes.ACC_PRIVATE;
         field.fieldNode.access &= ~Opcodes.ACC_PROTECTED;
         field.fieldNode.access |= Opcodes.ACC_PUBLIC;
 
-        this.renameFieldTree(
-                new HashSet<>(),
-                field,
-                ownerClass.originalRef,
-                this.obfuscator.getNameProvider().generateFieldName(ownerClass.classNode),
-                mappings
-        );
+        String key = ownerClass.originalRef.getFullQualifiedName() + '.'
+                + field.originalName + '.' + field.originalDescription;
+        if (mappings.containsKey(key))
+            return;  // 継承関係にあるクラスのフィールドとして, 既に名前が決まっている
+
+        String newName = this.getPreviousName(key);
+        if (newName == null)
+            newName = this.obfuscator.getNameProvider().generateSharedFieldName(ownerClass.classNode);
+
+        this.renameFieldGroup(mappings, field, id, newName);
     }
 
     private void writeClasses(NameProcessingContext ctxt,
@@ -455,48 +506,42 @@ public class NameObfuscation implements INameObfuscationProcessor
     {
         Remapper simpleRemapper = new MemberRemapper(mappings);
 
+        // 対応表は読み取りのみのため, クラスごとに並列で書き換える
+        ClassNode[] remapped = new ClassNode[classWrappers.size()];
+        this.obfuscator.getScheduler().forEach(
+                IntStream.range(0, classWrappers.size()).boxed().toList(),
+                i -> {
+                    ClassWrapper classWrapper = classWrappers.get(i);
+                    ctxt.setProcessingName(classWrapper.originalRef.getFullQualifiedName());
+                    remapped[i] = this.remapClass(classWrapper, simpleRemapper);
+                    ctxt.incrementTotalNamesProcessed();
+                }
+        );
+
+        // 新しい名前が他のクラスの元の名前と重なっても消えないよう, 先に全ての元の名前を取り除く
         for (ClassWrapper classWrapper : classWrappers)
         {
-            ctxt.setProcessingName(classWrapper.originalRef.getFullQualifiedName());
-            writeClass(classWrapper, simpleRemapper, ledger);
-            ctxt.incrementTotalNamesProcessed();
+            ledger.remove(classWrapper.originalRef);
+            this.obfuscator.getClasses().remove(classWrapper.originalRef);
+        }
+
+        for (int i = 0; i < remapped.length; i++)
+        {
+            ClassWrapper classWrapper = classWrappers.get(i);
+            ClassReference newRef = ClassReference.of(remapped[i]);
+            classWrapper.classNode = remapped[i];
+            this.obfuscator.onClassRenamed(classWrapper.originalRef, newRef);
+            this.obfuscator.getClasses().put(newRef, remapped[i]);
+            ledger.put(newRef, remapped[i]);
         }
     }
 
-    private void writeClass(ClassWrapper classWrapper, Remapper simpleRemapper,
-                            Map<ClassReference, ? super ClassNode> ledger)
+    private ClassNode remapClass(ClassWrapper classWrapper, Remapper simpleRemapper)
     {
         ClassNode classNode = classWrapper.classNode;
         boolean isPackagerRelatedClass = this.obfuscator.getPackager().isPackagerClassDecrypter(classNode);
 
         ClassNode copy = new ClassNode();
-        for (int i = 0; i < copy.methods.size(); i++)
-        {
-            MethodWrapper originalMethodWrapper = classWrapper.methods.get(i);
-            // check native
-            if (Modifier.isNative(originalMethodWrapper.methodNode.access))
-            {
-                log.info("Automatically excluded " + classWrapper.originalRef + "#" + originalMethodWrapper.methodNode.name + " because it is native.");
-                continue;
-            }
-
-            originalMethodWrapper.methodNode = copy.methods.get(i);
-
-                    /*for (AbstractInsnNode insn : methodNode.instructions.toArray()) { // TODO: Fix lambdas + interface
-                        if (insn instanceof InvokeDynamicInsnNode) {
-                            InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
-                            if (indy.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory")) {
-                                Handle handle = (Handle) indy.bsmArgs[1];
-                                String newName = mappings.get(handle.getOwner() + '.' + handle.getName() + handle.getDesc());
-                                if (newName != null) {
-                                    indy.name = newName;
-                                    indy.bsm = new Handle(handle.getTag(), handle.getOwner(), newName, handle.getDesc(), false);
-                                }
-                            }
-                        }
-                    }*/
-        }
-
         classNode.accept(new ClassRemapper(copy, simpleRemapper));
 
         if (copy.fields != null)
@@ -506,64 +551,36 @@ public class NameObfuscation implements INameObfuscationProcessor
         if (isPackagerRelatedClass)
             copy = this.obfuscator.getPackager().asPackagerClassDecrypter(copy);
 
-        ledger.remove(classWrapper.originalRef);
-        classWrapper.classNode = copy;
-        ledger.put(ClassReference.of(classWrapper.classNode), classWrapper.classNode);
-
-        ClassWriter writer = new ClassWriter(0);
-        classWrapper.classNode.accept(writer);
-        classWrapper.originalClass = writer.toByteArray();
-
-        this.obfuscator.getClasses().remove(classWrapper.originalRef);
-        this.obfuscator.getClasses().put(ClassReference.of(classWrapper.classNode), classWrapper.classNode);
-
-        ledger.remove(classWrapper.originalRef);
-        ledger.put(ClassReference.of(classWrapper.classNode), classWrapper.classNode);
+        return copy;
     }
 
-    private void saveMappingsFile(String file, HashMap<String, String> mappings)
+    private void saveMappingsFile(String file, Map<String, String> mappings)
     {
-        String[] mappingEntries = mappings.entrySet().stream()
-                                          .map(entry -> recogniseMappingEntry(
-                                                  mappings,
-                                                  entry.getKey(),
-                                                  entry.getValue()
-                                          ))
-                                          .distinct()
-                                          .toArray(String[]::new);
-
-        try (FileOutputStream fos = new FileOutputStream(file))
+        try
         {
-            for (String mappingEntry : mappingEntries)
-                fos.write((mappingEntry + '\n').getBytes(StandardCharsets.UTF_8));
+            MappingFormat format = MappingFormat.fromId(V_MAPPINGS_FORMAT.get());
+            MappingWriter.write(Mappings.fromFlat(mappings), format, Path.of(file));
         }
-        catch (IOException e)
+        catch (IOException | IllegalArgumentException e)
         {
-            e.printStackTrace();
+            log.error("Failed to save mappings to " + file, e);
         }
     }
 
     private boolean isClassExcluded(ClassWrapper classWrapper)
     {
-        String str = classWrapper.classNode.name;
-
-        for (Pattern excludedMethodsPattern : this.excludedClassesPatterns)
-            if (excludedMethodsPattern.matcher(str).matches())
-            {
-                log.info("Class '" + classWrapper.classNode.name + "' was excluded from name obfuscation by regex '" + excludedMethodsPattern.pattern() + "'");
-                return true;
-            }
+        String pattern = this.excludedClasses.findMatch(classWrapper.classNode.name);
+        if (pattern == null)
+            return false;
 
-        return false;
+        log.info("Class '" + classWrapper.classNode.name + "' was excluded from name obfuscation by pattern '" + pattern + "'");
+        return true;
     }
 
     private boolean isMethodExcluded(String owner, MethodWrapper methodWrapper)
     {
-        String str = owner + '.' + methodWrapper.originalName;
-
-        for (Pattern excludedMethodsPattern : this.excludedMethodsPatterns)
-            if (excludedMethodsPattern.matcher(str).matches())
-                return true;
+        if (this.excludedMethods.matches(owner + '.' + methodWrapper.originalName))
+            return true;
 
         if (NodeUtils.isEntryPoint(methodWrapper.methodNode))
         {
@@ -576,153 +593,31 @@ public class NameObfuscation implements INameObfuscationProcessor
 
     private boolean isFieldExcluded(String owner, FieldWrapper methodWrapper)
     {
-        String str = owner + '.' + methodWrapper.originalName;
-
-        for (Pattern excludedMethodsPattern : this.excludedFieldsPatterns)
-            if (excludedMethodsPattern.matcher(str).matches())
-                return true;
-
-        return false;
-    }
-
-    private boolean canRenameMethodTree(Map<String, String> mappings, Set<ClassTree> visited,
-                                        MethodWrapper methodWrapper, ClassReference owner)
-    {
-        ClassTree tree = this.obfuscator.getTree(owner);
-
-        if (tree == null)
-            return false;
-
-        if (NodeUtils.isSpecialMethod(methodWrapper.methodNode, tree))
-            return false;
-
-        if (visited.contains(tree))
-            return true;
-
-        visited.add(tree);
-
-        if (tree.missingSuperClass || Modifier.isNative(methodWrapper.methodNode.access))
-            return false;
-
-        if (mappings.containsKey(owner.getFullQualifiedName() + '.' + methodWrapper.originalName + methodWrapper.originalDescription))
-            return true;
-
-        if (!methodWrapper.owner.originalRef.equals(owner) && tree.classWrapper.libraryNode)
-            for (MethodNode mn : tree.classWrapper.classNode.methods)
-                if (mn.name.equals(methodWrapper.originalName)
-                        && mn.desc.equals(methodWrapper.originalDescription))
-                    return false;
-
-        for (ClassReference parent : tree.parentClasses)
-            if (!(parent == null || canRenameMethodTree(mappings, visited, methodWrapper, parent)))
-                return false;
-
-        for (ClassReference sub : tree.subClasses)
-            if (!(sub == null || canRenameMethodTree(mappings, visited, methodWrapper, sub)))
-                return false;
-
-        return true;
-    }
-
-    private void renameMethodTree(Map<String, String> mappings, Set<ClassTree> visited, MethodWrapper MethodWrapper,
-                                  ClassReference classRef,
-                                  String newName)
-    {
-        ClassTree tree = this.obfuscator.getTree(classRef);
-
-        if (tree.classWrapper.libraryNode || visited.contains(tree))
-            return;
-
-        mappings.put(classRef.getFullQualifiedName() + '.' + MethodWrapper.originalName + MethodWrapper.originalDescription, newName);
-        visited.add(tree);
-        for (ClassReference parentClass : tree.parentClasses)
-            this.renameMethodTree(mappings, visited, MethodWrapper, parentClass, newName);
-
-        for (ClassReference subClass : tree.subClasses)
-            this.renameMethodTree(mappings, visited, MethodWrapper, subClass, newName);
-
+        return this.excludedFields.matches(owner + '.' + methodWrapper.originalName);
     }
 
-    private boolean canRenameFieldTree(Map<String, String> mappings, Set<ClassTree> visited, FieldWrapper fieldWrapper,
-                                       ClassReference owner)
+    private void renameMethodGroup(Map<String, String> mappings, MethodWrapper methodWrapper, int id, String newName)
     {
-        ClassTree tree = this.obfuscator.getTree(owner);
-
-        if (tree == null)
-            return false;
-
-        if (visited.contains(tree))
-            return true;
-
-        visited.add(tree);
-
-        if (tree.missingSuperClass)
-            return false;
-
-        if (mappings.containsKey(owner.getFullQualifiedName() + '.' + fieldWrapper.originalName + '.' + fieldWrapper.originalDescription))
-            return true;
-        if (!fieldWrapper.owner.originalRef.equals(owner) && tree.classWrapper.libraryNode)
-            for (FieldNode fn : tree.classWrapper.classNode.fields)
-                if (fieldWrapper.originalName.equals(fn.name) && fieldWrapper.originalDescription.equals(fn.desc))
-                    return false;
-
-        for (ClassReference parent : tree.parentClasses)
-            if (!(parent == null || canRenameFieldTree(mappings, visited, fieldWrapper, parent)))
-                return false;
-
-        for (ClassReference sub : tree.subClasses)
-            if (!(sub == null || canRenameFieldTree(mappings, visited, fieldWrapper, sub)))
-                return false;
-
-        return true;
+        for (int member : this.overrideGroups.getRenameGroup(id))
+            mappings.put(
+                    this.hierarchy.getReference(member).getFullQualifiedName() + '.'
+                            + methodWrapper.originalName + methodWrapper.originalDescription,
+                    newName
+            );
     }
 
-    private void renameFieldTree(HashSet<ClassTree> visited, FieldWrapper fieldWrapper, ClassReference owner, String newName,
-                                 Map<String, String> mappings)
+    private void renameFieldGroup(Map<String, String> mappings, FieldWrapper fieldWrapper, int id, String newName)
     {
-        ClassTree tree = this.obfuscator.getTree(owner);
-
-        if (tree.classWrapper.libraryNode || visited.contains(tree))
-            return;
-
-        mappings.put(owner.getFullQualifiedName() + '.' + fieldWrapper.originalName + '.' + fieldWrapper.originalDescription, newName);
-        visited.add(tree);
-        for (ClassReference parentClass : tree.parentClasses)
-            renameFieldTree(visited, fieldWrapper, parentClass, newName, mappings);
-        for (ClassReference subClass : tree.subClasses)
-            renameFieldTree(visited, fieldWrapper, subClass, newName, mappings);
+        for (int member : this.overrideGroups.getRenameGroup(id))
+            mappings.put(
+                    this.hierarchy.getReference(member).getFullQualifiedName() + '.'
+                            + fieldWrapper.originalName + '.' + fieldWrapper.originalDescription,
+                    newName
+            );
     }
 
     private static boolean hasNativeMethodInClass(ClassNode classNode)
     {
         return classNode.methods.stream().anyMatch(methodNode -> Modifier.isNative(methodNode.access));
     }
-
-    private static String recogniseMappingEntry(HashMap<String, String> mappings, String original, String mapped)
-    {
-        String[] entryContents = original.split("\\.");
-        if (entryContents.length <= 1)
-            return "CL: " + mapped + " " + original;
-
-        String className = entryContents[0];
-        String memberName = entryContents[1];
-        String fieldDesc = entryContents.length > 2 ? entryContents[2]: null;
-
-        String mappedClass = mappings.get(className);
-
-        if (fieldDesc != null)
-            return "FD: " + mappedClass + "/" + mapped + " " + className + "/" + memberName + " " + fieldDesc;
-        else
-        {
-            int descStart = memberName.indexOf('(');
-            if (descStart != -1)
-            {
-                String methodDesc = memberName.substring(descStart);
-                memberName = memberName.substring(0, descStart);
-                return "MD: " + mappedClass + "/" + mapped + " " + methodDesc + " " + className + "/" + memberName + " " + methodDesc;
-            }
-            else
-                return "# MD: " + mappedClass + "/" + memberName + " " + mapped;
-        }
-    }
 }
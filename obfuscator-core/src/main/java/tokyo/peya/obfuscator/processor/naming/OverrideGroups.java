@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.processor.naming;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import tokyo.peya.obfuscator.clazz.ClassGraph;
+import tokyo.peya.obfuscator.clazz.ClassWrapper;
+import tokyo.peya.obfuscator.utils.NodeUtils;
+import tokyo.peya.obfuscator.utils.WorkStealingScheduler;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 名前の変更を共有しなければならないメンバのグループです.
+ * <p>
+ * 継承関係で繋がった入力クラスは, 同じ名前と記述子を持つメソッドとフィールドを同じ名前に変更する必要があります.
+ * このグループを, 入力クラスどうしの継承関係に対する Union-Find で一度だけ求めます.
+ * <p>
+ * また, ライブラリを含む継承関係全体の連結成分ごとに, 名前の変更を妨げる要因
+ * （見つからない祖先, ライブラリが宣言するメンバ, 列挙型やアノテーションの特殊なメソッド）を並列に集計します.
+ * これにより, メンバごとに継承関係を辿る必要がなくなります.
+ */
+final class OverrideGroups
+{
+    private final ClassGraph graph;
+    /**
+     * クラスごとの, 名前の変更を共有するグループの代表.
+     */
+    private final int[] renameGroups;
+    /**
+     * グループの代表ごとの, 所属するクラス.
+     */
+    private final Map<Integer, int[]> renameGroupMembers;
+    /**
+     * クラスごとの, ライブラリを含む連結成分の情報.
+     */
+    private final Component[] components;
+
+    private OverrideGroups(ClassGraph graph, int[] renameGroups, Map<Integer, int[]> renameGroupMembers,
+                           Component[] components)
+    {
+        this.graph = graph;
+        this.renameGroups = renameGroups;
+        this.renameGroupMembers = renameGroupMembers;
+        this.components = components;
+    }
+
+    static OverrideGroups build(ClassGraph graph, WorkStealingScheduler scheduler)
+    {
+        int size = graph.size();
+        int[] allClasses = newUnionFind(size);
+        int[] inputClasses = newUnionFind(size);
+        for (int id = 0; id < size; id++)
+            for (int parent : graph.getParents(id))
+            {
+                union(allClasses, id, parent);
+                if (!(graph.getWrapper(id).libraryNode || graph.getWrapper(parent).libraryNode))
+                    union(inputClasses, id, parent);
+            }
+
+        Map<Integer, List<Integer>> componentMembers = groupByRoot(allClasses);
+        Map<Integer, List<Integer>> renameGroupMembers = groupByRoot(inputClasses);
+
+        // 連結成分どうしは独立しているため, 並列に集計できる
+        Map<Integer, Component> componentsByRoot = new ConcurrentHashMap<>();
+        scheduler.forEach(
+                componentMembers.entrySet(),
+                entry -> componentsByRoot.put(entry.getKey(), Component.of(graph, entry.getValue()))
+        );
+
+        Component[] components = new Component[size];
+        int[] renameGroups = new int[size];
+        for (int id = 0; id < size; id++)
+        {
+            components[id] = componentsByRoot.get(find(allClasses, id));
+            renameGroups[id] = find(inputClasses, id);
+        }
+
+        Map<Integer, int[]> members = new HashMap<>(renameGroupMembers.size() * 2);
+        renameGroupMembers.forEach((root, ids) -> members.put(
+                root,
+                ids.stream().mapToInt(Integer::intValue).toArray()
+        ));
+
+        return new OverrideGroups(graph, renameGroups, members, components);
+    }
+
+    /**
+     * メソッドの名前を, 継承関係を壊さずに変更できるかどうかを返します.
+     *
+     * @param id     メソッドを宣言するクラスの ID
+     * @param method メソッド
+     * @return 変更できる場合は {@code true}
+     */
+    boolean canRenameMethod(int id, MethodNode method)
+    {
+        if (id < 0 || Modifier.isNative(method.access))
+            return false;
+
+        Component component = this.components[id];
+        return !(component.missingSuperClass
+                || component.isSpecialMethod(method)
+                || component.libraryMethods.contains(method.name + method.desc));
+    }
+
+    /**
+     * フィールドの名前を, 継承関係を壊さずに変更できるかどうかを返します.
+     *
+     * @param id    フィールドを宣言するクラスの ID
+     * @param name  フィールドの名前
+     * @param desc  フィールドの記述子
+     * @return 変更できる場合は {@code true}
+     */
+    boolean canRenameField(int id, String name, String desc)
+    {
+        if (id < 0)
+            return false;
+
+        Component component = this.components[id];
+        return !(component.missingSuperClass || component.libraryFields.contains(name + ' ' + desc));
+    }
+
+    /**
+     * 指定されたクラスと, 名前の変更を共有するクラスを返します.
+     * ライブラリ・クラスは含まれません.
+     *
+     * @param id クラスの ID
+     * @return 名前の変更を共有するクラスの ID
+     */
+    int[] getRenameGroup(int id)
+    {
+        return this.renameGroupMembers.get(this.renameGroups[id]);
+    }
+
+    ClassGraph getGraph()
+    {
+        return this.graph;
+    }
+
+    private static Map<Integer, List<Integer>> groupByRoot(int[] unionFind)
+    {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int id = 0; id < unionFind.length; id++)
+            groups.computeIfAbsent(find(unionFind, id), k -> new ArrayList<>()).add(id);
+
+        return groups;
+    }
+
+    private static int[] newUnionFind(int size)
+    {
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++)
+            parents[i] = i;
+
+        return parents;
+    }
+
+    private static int find(int[] parents, int id)
+    {
+        int root = id;
+        while (parents[root] != root)
+            root = parents[root];
+
+        // 経路圧縮
+        while (parents[id] != root)
+        {
+            int next = parents[id];
+            parents[id] = root;
+            id = next;
+        }
+
+        return root;
+    }
+
+    private static void union(int[] parents, int a, int b)
+    {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA == rootB)
+            return;
+
+        // 代表を小さい ID に揃え, グループの代表が入力の順序に依らないようにする
+        if (rootA < rootB)
+            parents[rootB] = rootA;
+        else
+            parents[rootA] = rootB;
+    }
+
+    /**
+     * ライブラリを含む継承関係の連結成分で, 名前の変更を妨げる要因です.
+     */
+    private static final class Component
+    {
+        private final Set<String> libraryMethods = new HashSet<>();
+        private final Set<String> libraryFields = new HashSet<>();
+        private boolean missingSuperClass;
+        private boolean hasEnum;
+        private boolean hasAnnotation;
+
+        private static Component of(ClassGraph graph, List<Integer> members)
+        {
+            Component component = new Component();
+            for (int id : members)
+            {
+                ClassWrapper wrapper = graph.getWrapper(id);
+                ClassNode node = wrapper.classNode;
+                component.missingSuperClass |= graph.isMissingSuperClass(id);
+                component.hasEnum |= "java/lang/Enum".equals(node.superName);
+                component.hasAnnotation |= (node.access & Opcodes.ACC_ANNOTATION) != 0
+                        && Modifier.isInterface(node.access);
+
+                if (!wrapper.libraryNode)
+                    continue;
+
+                for (MethodNode method : node.methods)
+                    component.libraryMethods.add(method.name + method.desc);
+                for (FieldNode field : node.fields)
+                    component.libraryFields.add(field.name + ' ' + field.desc);
+            }
+
+            return component;
+        }
+
+        /**
+         * 連結成分のいずれかのクラスにとって特殊なメソッドかどうかを返します.
+         *
+         * @see NodeUtils#isSpecialMethod(MethodNode, ClassNode)
+         */
+        private boolean isSpecialMethod(MethodNode method)
+        {
+            return NodeUtils.isSpecialMethod(method)
+                    || this.hasEnum && NodeUtils.isEnumSpecialMethod(method)
+                    || this.hasAnnotation && method.name.equals("value");
+        }
+    }
+}
@@ -36,6 +36,7 @@ import tokyo.peya.obfuscator.configuration.values.BooleanValue;
 import tokyo.peya.obfuscator.configuration.values.EnabledValue;
 import tokyo.peya.obfuscator.configuration.values.StringValue;
 import tokyo.peya.obfuscator.utils.NodeUtils;
+import tokyo.peya.obfuscator.utils.StringManipulationUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,7 +76,11 @@ public class HideStringsTransformer implements IClassTransformer
     );
 
     private static final int MAX_ONE_STRING_LENGTH = 500;
-    private static final int MAX_TOTAL_STRING_LENGTH = 65535;
+    /**
+     * SourceFile 属性に格納できる最大のバイト数 (修正 UTF-8).
+     * 文字数ではなくバイト数で数えないと, 2, 3 バイトの文字を含む場合に上限を超えてしまう.
+     */
+    private static final int MAX_TOTAL_STRING_BYTES = 65535;
     private final Obfuscator instance;
 
     static
@@ -102,7 +107,9 @@ public class HideStringsTransformer implements IClassTransformer
         int methodCount = 0;
         MethodNode methodNode = null;
 
-        int ledgerLength = 0;
+        // 区切り文字と開始・終了の目印の分も, あらかじめ確保しておく
+        int delimiterBytes = getMarkerBytes(V_DELIMITER);
+        int ledgerBytes = getMarkerBytes(V_MARKER_START) + getMarkerBytes(V_MARKER_END);
         for (MethodNode method : node.methods)
         {
             List<String> strings = createConstantReferences(
@@ -110,12 +117,15 @@ public class HideStringsTransformer implements IClassTransformer
                     node,
                     method,
                     fieldName,
-                    ledgerLength
+                    ledgerBytes,
+                    delimiterBytes
             );
 
             if (!strings.isEmpty())
             {
                 hiddenStrings.addAll(strings);
+                for (String string : strings)
+                    ledgerBytes += StringManipulationUtils.getModifiedUtf8Length(string) + delimiterBytes;
 
                 ledgerElementCount += strings.size();
                 methodCount++;
@@ -314,7 +324,8 @@ public class HideStringsTransformer implements IClassTransformer
                                                          ClassNode owner,
                                                          MethodNode method,
                                                          String cacheFieldName,
-                                                         int ledgerLength)
+                                                         int ledgerBytes,
+                                                         int delimiterBytes)
     {
         List<String> hiddenStrings = new ArrayList<>();
 
@@ -333,17 +344,19 @@ public class HideStringsTransformer implements IClassTransformer
                 continue;
             }
 
-            if (ledgerLength + string.length() > MAX_TOTAL_STRING_LENGTH)
+            boolean optimize = V_OPTIMIZE.get();
+            boolean reused = optimize && (strings.contains(string) || hiddenStrings.contains(string));
+            int stringBytes = reused ? 0: StringManipulationUtils.getModifiedUtf8Length(string) + delimiterBytes;
+            if (ledgerBytes + stringBytes > MAX_TOTAL_STRING_BYTES)
             {
-                log.warn("Total string length is too long: " + ledgerLength + " + " + string.length() + " > " + MAX_TOTAL_STRING_LENGTH + ", skipping");
+                log.warn("Total string length is too long: " + ledgerBytes + " + " + stringBytes + " bytes > " + MAX_TOTAL_STRING_BYTES + " bytes, skipping");
 
-                if (ledgerLength == MAX_TOTAL_STRING_LENGTH)
+                if (ledgerBytes + delimiterBytes >= MAX_TOTAL_STRING_BYTES)
                     break;
                 else
                     continue;
             }
 
-            boolean optimize = V_OPTIMIZE.get();
             int idx;
             if (optimize && strings.contains(string))
                 idx = strings.indexOf(string);
@@ -360,8 +373,8 @@ public class HideStringsTransformer implements IClassTransformer
             method.instructions.insert(abstractInsnNode, insnList);
             method.instructions.remove(abstractInsnNode);
 
-            ledgerLength += string.length();
-            if (!optimize || !(strings.contains(string) || hiddenStrings.contains(string)))
+            ledgerBytes += stringBytes;
+            if (!reused)
                 hiddenStrings.add(string);
         }
 
@@ -386,6 +399,17 @@ public class HideStringsTransformer implements IClassTransformer
         return preferred;
     }
 
+    /**
+     * 目印や区切り文字が台帳に占めるバイト数を返します. 未設定の場合はランダムな 1 文字 (最大 3 バイト) になります.
+     */
+    private static int getMarkerBytes(StringValue value)
+    {
+        if (value.get() == null || value.get().isEmpty())
+            return 3;
+
+        return StringManipulationUtils.getModifiedUtf8Length(value.get());
+    }
+
     private static boolean isExistsInList(List<String> list, String string)
     {
         return list.stream().parallel().anyMatch(s -> s.contains(string));
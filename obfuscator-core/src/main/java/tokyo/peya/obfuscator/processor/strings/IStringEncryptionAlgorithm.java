@@ -20,6 +20,14 @@ public interface IStringEncryptionAlgorithm
         return "decrypt" + this.getName();
     }
 
+    /**
+     * 同じ鍵で暗号化された配列の範囲 {@code [from, to)} を, その場で復号するメソッドの名前.
+     */
+    default String getBatchDecryptMethodName()
+    {
+        return "decryptAll" + this.getName();
+    }
+
     String encrypt(String obj, String key);
 
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.processor.strings;
+
+import java.util.List;
+
+/**
+ * クラス内の文字列定数を 1 つの文字列にまとめるための形式です.
+ * 各文字列は {@code 長さ(10 進数) ':' 内容} の形で連結されます.
+ * 長さを文字コードではなく 10 進数で表すため, 暗号化の際に文字列をバイト列に変換しても壊れません.
+ */
+public final class PackedLedger
+{
+    private PackedLedger()
+    {
+    }
+
+    /**
+     * 文字列定数を 1 つの文字列にまとめます.
+     *
+     * @param constants まとめる文字列定数
+     * @return まとめた文字列
+     */
+    public static String pack(List<String> constants)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String constant : constants)
+            sb.append(constant.length()).append(':').append(constant);
+
+        return sb.toString();
+    }
+
+    /**
+     * まとめた文字列を元の文字列定数の配列に戻します.
+     * このメソッドは復号クラスに複製され, 難読化されたプログラムの中で実行されます.
+     *
+     * @param packed まとめた文字列
+     * @param count  文字列定数の数
+     * @return 文字列定数の配列
+     */
+    public static String[] unpack(String packed, int count)
+    {
+        String[] ledger = new String[count];
+        int position = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int length = 0;
+            char c;
+            while ((c = packed.charAt(position++)) != ':')
+                length = length * 10 + (c - '0');
+
+            ledger[i] = packed.substring(position, position + length);
+            position += length;
+        }
+
+        return ledger;
+    }
+}
@@ -14,18 +14,23 @@ package tokyo.peya.obfuscator.processor.strings;
 import lombok.extern.slf4j.Slf4j;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.LineNumberNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
 import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
 import tokyo.peya.obfuscator.IClassTransformer;
 import tokyo.peya.obfuscator.Obfuscator;
 import tokyo.peya.obfuscator.ProcessorCallback;
@@ -38,6 +43,7 @@ import tokyo.peya.obfuscator.processor.strings.algorithms.AESEncryptionAlgorithm
 import tokyo.peya.obfuscator.processor.strings.algorithms.BlowfishEncryptionAlgorithm;
 import tokyo.peya.obfuscator.processor.strings.algorithms.DESEncryptionAlgorithm;
 import tokyo.peya.obfuscator.processor.strings.algorithms.XOREncryptionAlgorithm;
+import tokyo.peya.obfuscator.processor.strings.algorithms.XorShiftEncryptionAlgorithm;
 import tokyo.peya.obfuscator.utils.NameUtils;
 import tokyo.peya.obfuscator.utils.NodeUtils;
 import tokyo.peya.obfuscator.utils.StringManipulationUtils;
@@ -45,8 +51,9 @@ import tokyo.peya.obfuscator.utils.StringManipulationUtils;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 @Slf4j(topic = "Processor/StringEncryption")
@@ -88,10 +95,35 @@ public class StringEncryptionTransformer implements IClassTransformer
             DeprecationLevel.AVAILABLE,
             true
     );
+    private static final BooleanValue V_ALGO_XORSHIFT = new BooleanValue(
+            PROCESSOR_NAME,
+            "algorithm_xorshift",
+            "ui.transformers.string_encryption.algo_xorshift",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    private static final BooleanValue V_LAZY_DECRYPTION = new BooleanValue(
+            PROCESSOR_NAME,
+            "lazy_decryption",
+            "ui.transformers.string_encryption.lazy_decryption",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    private static final BooleanValue V_PACKED_LEDGER = new BooleanValue(
+            PROCESSOR_NAME,
+            "packed_ledger",
+            "ui.transformers.string_encryption.packed_ledger",
+            DeprecationLevel.AVAILABLE,
+            false
+    );
+    /**
+     * 定数プールの 1 つの文字列に格納できる最大のバイト数 (修正 UTF-8).
+     */
+    private static final int MAX_CONSTANT_BYTES = 65535;
     private final Obfuscator instance;
     private final List<? extends IStringEncryptionAlgorithm> algorithms;
 
-    private ClassNode decryptionClass;
+    private volatile ClassNode decryptionClass;
 
     static
     {
@@ -105,7 +137,9 @@ public class StringEncryptionTransformer implements IClassTransformer
         this.algorithms = getAlgorithms();
     }
 
-    private static ClassNode createDecrypters(String packageName, List<? extends IStringEncryptionAlgorithm> algorithms)
+    private static ClassNode createDecrypters(String packageName,
+                                              List<? extends IStringEncryptionAlgorithm> algorithms,
+                                              boolean packed)
     {
         ClassNode cn = new ClassNode();
         cn.visit(
@@ -119,27 +153,57 @@ public class StringEncryptionTransformer implements IClassTransformer
 
         for (IStringEncryptionAlgorithm entry : algorithms)
         {
+            ClassNode algorithm;
             try
             {
-                MethodNode method = NodeUtils.getMethod(NodeUtils.toNode(entry.getClass()), "decrypt");
-
-                if (method != null)
-                {
-                    method.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
-                    method.name = "decrypt" + entry.getName();
-                    method.desc = "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;";
-
-                    cn.methods.add(method);
-                }
-                else
-                    throw new IllegalStateException("No decryption method found for " + entry.getClass().getName());
+                algorithm = NodeUtils.toNode(entry.getClass());
             }
             catch (IOException e)
             {
                 throw new IllegalStateException("No decryption method found for " + entry.getClass().getName(), e);
             }
+
+            // 復号に使う静的メンバ（キャッシュや補助メソッドを含む）を, アルゴリズム名を付けて移す
+            Map<String, String> mapping = new HashMap<>();
+            mapping.put(algorithm.name, cn.name);
+            for (MethodNode method : algorithm.methods)
+                if (Modifier.isStatic(method.access))
+                    mapping.put(algorithm.name + '.' + method.name + method.desc, method.name + entry.getName());
+            for (FieldNode field : algorithm.fields)
+                if (Modifier.isStatic(field.access))
+                    mapping.put(algorithm.name + '.' + field.name, field.name + entry.getName());
+
+            ClassNode remapped = new ClassNode();
+            algorithm.accept(new ClassRemapper(remapped, new SimpleRemapper(mapping)));
+
+            for (MethodNode method : remapped.methods)
+                if (Modifier.isStatic(method.access))
+                    cn.methods.add(method);
+            for (FieldNode field : remapped.fields)
+                if (Modifier.isStatic(field.access))
+                    cn.fields.add(field);
+
+            if (NodeUtils.getMethod(cn, entry.getDecryptMethodName()) == null
+                    || NodeUtils.getMethod(cn, entry.getBatchDecryptMethodName()) == null)
+                throw new IllegalStateException("No decryption method found for " + entry.getClass().getName());
         }
 
+        // まとめた台帳を使わない場合は, 使われないメソッドを出力に含めない
+        if (packed)
+            try
+            {
+                MethodNode unpack = NodeUtils.getMethod(NodeUtils.toNode(PackedLedger.class), "unpack");
+                if (unpack == null)
+                    throw new IllegalStateException("No unpack method found for " + PackedLedger.class.getName());
+
+                unpack.name = "unpackLedger";
+                cn.methods.add(unpack);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("No unpack method found for " + PackedLedger.class.getName(), e);
+            }
+
         cn.visitEnd();
 
         return cn;
@@ -171,12 +235,27 @@ public class StringEncryptionTransformer implements IClassTransformer
         else if (Modifier.isInterface(node.access))
             return;
         String encryptedStringsFieldName = "stringsLedger";
-        String[] constantReferences = createStringConstantReferences(node, encryptedStringsFieldName);
 
-        int constants = constantReferences.length;
+        // 遅延復号では, 文字列を最初に参照したときにその要素だけを復号する
+        boolean lazy = V_LAZY_DECRYPTION.get() && !this.algorithms.isEmpty();
+        // まとめた台帳では, クラス内のすべての文字列を 1 つの暗号文にまとめて一度に復号する
+        boolean packed = V_PACKED_LEDGER.get() && !lazy;
+        List<LedgerGroup> groups = this.collectStringConstants(node, packed);
+
+        int constants = 0;
+        for (LedgerGroup group : groups)
+        {
+            group.offset = constants;
+            constants += group.constants.size();
+        }
         if (constants == 0)
             return;
 
+        String lookupMethodName = lazy
+                ? this.instance.getNameProvider().toUniqueMethodName(node, "lookupLedger", "(I)Ljava/lang/String;")
+                : null;
+        replaceStringConstants(node, groups, encryptedStringsFieldName, lookupMethodName);
+
         boolean isInterface = (node.access & Opcodes.ACC_INTERFACE) != 0;
         node.fields.add(new FieldNode(
                                 (isInterface ? Opcodes.ACC_PUBLIC: Opcodes.ACC_PRIVATE)  // インターフェースの場合はプライベートにできない
@@ -188,19 +267,44 @@ public class StringEncryptionTransformer implements IClassTransformer
                         )
         );
 
+        // クラスは並列に処理されるため, 復号クラスが一度だけ生成されるようにする
         if (this.decryptionClass == null)
-        {
-            this.decryptionClass = createDecrypters(NameUtils.getPackageName(node), this.algorithms);
-            callback.addClass(this.decryptionClass);
-        }
+            synchronized (this)
+            {
+                if (this.decryptionClass == null)
+                {
+                    ClassNode decrypters = createDecrypters(
+                            NameUtils.getPackageName(node),
+                            this.algorithms,
+                            packed
+                    );
+                    callback.addClass(decrypters);
+                    this.decryptionClass = decrypters;
+                }
+            }
 
 
-        InsnList instructions = this.createEncryptedStringConstants(
-                node,
-                constants,
-                encryptedStringsFieldName,
-                constantReferences
-        );
+        InsnList instructions;
+        if (lazy)
+        {
+            instructions = createLedgerAllocation(node, constants, encryptedStringsFieldName);
+            node.methods.add(this.createLookupMethod(
+                    node,
+                    lookupMethodName,
+                    encryptedStringsFieldName,
+                    groups
+            ));
+            callback.setForceComputeFrames();
+        }
+        else if (packed)
+            instructions = this.createPackedStringConstants(node, encryptedStringsFieldName, groups.get(0));
+        else
+            instructions = this.createEncryptedStringConstants(
+                    node,
+                    constants,
+                    encryptedStringsFieldName,
+                    groups
+            );
 
         MethodNode retrieveStrings = this.createInitStringsMethod(node, instructions);
         node.methods.add(retrieveStrings);
@@ -211,82 +315,314 @@ public class StringEncryptionTransformer implements IClassTransformer
             ClassNode node,
             int constants,
             String encryptedStringsFieldName,
-            String[] constantReferences)
+            List<LedgerGroup> groups)
     {
 
-        InsnList instructions = new InsnList();
-
-        // 空の配列 (constants 個 ) を生成
-        /// anewarray(count, &fieldArray) {
-        instructions.add(NodeUtils.generateIntPush(constants));
-        instructions.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
-        instructions.add(new FieldInsnNode(
-                Opcodes.PUTSTATIC,
-                node.name,
-                encryptedStringsFieldName,
-                "[Ljava/lang/String;"
-        ));
-        /// }
+        InsnList instructions = createLedgerAllocation(node, constants, encryptedStringsFieldName);
 
         if (this.algorithms.isEmpty())
         {
             log.warn("No string encryption algorithms are enabled, skipping");
-            for (int i = 0; i < constants; i++)
-            {
-                /// aastore(&arrayField, index, &value)
-                instructions.add(new FieldInsnNode(
-                        Opcodes.GETSTATIC,
-                        node.name,
-                        encryptedStringsFieldName,
-                        "[Ljava/lang/String;"
-                ));
-                instructions.add(NodeUtils.generateIntPush(i));
-                instructions.add(new LdcInsnNode(constantReferences[i]));
-                instructions.add(new InsnNode(Opcodes.AASTORE));
-            }
+            for (LedgerGroup group : groups)
+                for (int i = 0; i < group.constants.size(); i++)
+                {
+                    /// aastore(&arrayField, index, &value)
+                    instructions.add(new FieldInsnNode(
+                            Opcodes.GETSTATIC,
+                            node.name,
+                            encryptedStringsFieldName,
+                            "[Ljava/lang/String;"
+                    ));
+                    instructions.add(NodeUtils.generateIntPush(group.offset + i));
+                    instructions.add(new LdcInsnNode(group.constants.get(i)));
+                    instructions.add(new InsnNode(Opcodes.AASTORE));
+                }
 
             return instructions;
         }
 
-        for (int j = 0; j < constants; j++)
+        // 暗号文を配列に格納してから, 鍵ごとに範囲をまとめて復号する
+        for (LedgerGroup group : groups)
         {
-            // ランダムなアルゴリズムを選択
-            IStringEncryptionAlgorithm processor = this.algorithms.get(random.nextInt(this.algorithms.size()));
-            String decryptionKey = StringManipulationUtils.retrieveStrings(5);
+            for (int j = 0; j < group.constants.size(); j++)
+                instructions.add(generateEncryptedStore(
+                        node,
+                        group.offset + j,
+                        encryptedStringsFieldName,
+                        group.algorithm.encrypt(group.constants.get(j), group.key)
+                ));
 
             MethodNode decrypterMethod = NodeUtils.getMethod(
                     this.decryptionClass,
-                    processor.getDecryptMethodName()
+                    group.algorithm.getBatchDecryptMethodName()
             );
             assert decrypterMethod != null;
 
-            instructions.add(generateDecrypterInvocation(
-                    node,
-                    j,
+            /// decryptAll(&arrayField, from, to, key)
+            instructions.add(new FieldInsnNode(
+                    Opcodes.GETSTATIC,
+                    node.name,
                     encryptedStringsFieldName,
-                    decryptionKey,
+                    "[Ljava/lang/String;"
+            ));
+            instructions.add(NodeUtils.generateIntPush(group.offset));
+            instructions.add(NodeUtils.generateIntPush(group.offset + group.constants.size()));
+            instructions.add(new LdcInsnNode(group.key));
+            instructions.add(new MethodInsnNode(
+                    Opcodes.INVOKESTATIC,
                     this.decryptionClass.name,
-                    decrypterMethod,
-                    processor.encrypt(constantReferences[j], decryptionKey)
+                    decrypterMethod.name,
+                    "([Ljava/lang/String;IILjava/lang/String;)V",
+                    false
             ));
         }
 
         return instructions;
     }
 
+    /**
+     * クラス内のすべての文字列を 1 つにまとめて暗号化し, それを復号して配列に分割する命令列を生成します.
+     */
+    private InsnList createPackedStringConstants(ClassNode node, String encryptedStringsFieldName, LedgerGroup group)
+    {
+        String packed = PackedLedger.pack(group.constants);
+        if (group.algorithm == null)
+            log.warn("No string encryption algorithms are enabled, packing strings without encryption");
+        else
+            packed = group.algorithm.encrypt(packed, group.key);
+
+        InsnList instructions = generateConstantPush(packed);
+
+        if (group.algorithm != null)
+        {
+            MethodNode decrypterMethod = NodeUtils.getMethod(
+                    this.decryptionClass,
+                    group.algorithm.getDecryptMethodName()
+            );
+            assert decrypterMethod != null;
+
+            /// invokestatic(*string, *string)
+            instructions.add(new LdcInsnNode(group.key));
+            instructions.add(new MethodInsnNode(
+                    Opcodes.INVOKESTATIC,
+                    this.decryptionClass.name,
+                    decrypterMethod.name,
+                    "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;",
+                    false
+            ));
+        }
+
+        /// putstatic(unpackLedger(*string, count), &arrayField)
+        instructions.add(NodeUtils.generateIntPush(group.constants.size()));
+        instructions.add(new MethodInsnNode(
+                Opcodes.INVOKESTATIC,
+                this.decryptionClass.name,
+                "unpackLedger",
+                "(Ljava/lang/String;I)[Ljava/lang/String;",
+                false
+        ));
+        instructions.add(new FieldInsnNode(
+                Opcodes.PUTSTATIC,
+                node.name,
+                encryptedStringsFieldName,
+                "[Ljava/lang/String;"
+        ));
+
+        return instructions;
+    }
+
+    /**
+     * 文字列を積む命令列を生成します.
+     * 定数プールの上限を超える文字列は, 複数の定数に分けて実行時に連結します.
+     */
+    private static InsnList generateConstantPush(String value)
+    {
+        InsnList instructions = new InsnList();
+        List<String> chunks = splitConstant(value);
+        if (chunks.size() == 1)
+        {
+            instructions.add(new LdcInsnNode(value));
+            return instructions;
+        }
+
+        /// new StringBuilder().append(*chunk)...toString() {
+        instructions.add(new TypeInsnNode(Opcodes.NEW, "java/lang/StringBuilder"));
+        instructions.add(new InsnNode(Opcodes.DUP));
+        instructions.add(new MethodInsnNode(
+                Opcodes.INVOKESPECIAL,
+                "java/lang/StringBuilder",
+                "<init>",
+                "()V",
+                false
+        ));
+        for (String chunk : chunks)
+        {
+            instructions.add(new LdcInsnNode(chunk));
+            instructions.add(new MethodInsnNode(
+                    Opcodes.INVOKEVIRTUAL,
+                    "java/lang/StringBuilder",
+                    "append",
+                    "(Ljava/lang/String;)Ljava/lang/StringBuilder;",
+                    false
+            ));
+        }
+        instructions.add(new MethodInsnNode(
+                Opcodes.INVOKEVIRTUAL,
+                "java/lang/StringBuilder",
+                "toString",
+                "()Ljava/lang/String;",
+                false
+        ));
+        /// }
+
+        return instructions;
+    }
+
+    /**
+     * 文字列を, 修正 UTF-8 で {@link #MAX_CONSTANT_BYTES} バイト以内に収まる定数に分割します.
+     */
+    private static List<String> splitConstant(String value)
+    {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            int size = StringManipulationUtils.getModifiedUtf8Length(value.charAt(i));
+            if (bytes + size > MAX_CONSTANT_BYTES)
+            {
+                chunks.add(value.substring(start, i));
+                start = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        chunks.add(value.substring(start));
+
+        return chunks;
+    }
+
+    private static InsnList createLedgerAllocation(ClassNode node, int constants, String encryptedStringsFieldName)
+    {
+        InsnList instructions = new InsnList();
+
+        // 空の配列 (constants 個 ) を生成
+        /// anewarray(count, &fieldArray) {
+        instructions.add(NodeUtils.generateIntPush(constants));
+        instructions.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/String"));
+        instructions.add(new FieldInsnNode(
+                Opcodes.PUTSTATIC,
+                node.name,
+                encryptedStringsFieldName,
+                "[Ljava/lang/String;"
+        ));
+        /// }
+
+        return instructions;
+    }
+
+    /**
+     * 文字列を暗号化し, それを復号して積む命令列を生成します.
+     */
+    private InsnList createDecryption(LedgerGroup group, String constant)
+    {
+        MethodNode decrypterMethod = NodeUtils.getMethod(
+                this.decryptionClass,
+                group.algorithm.getDecryptMethodName()
+        );
+        assert decrypterMethod != null;
+
+        InsnList toAdd = new InsnList();
+        /// invokestatic(*string, *string) {
+        toAdd.add(generateConstantPush(group.algorithm.encrypt(constant, group.key)));
+        toAdd.add(new LdcInsnNode(group.key));
+        toAdd.add(new MethodInsnNode(
+                Opcodes.INVOKESTATIC,
+                this.decryptionClass.name,
+                decrypterMethod.name,
+                "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;",
+                false
+        ));
+        /// }
+
+        return toAdd;
+    }
+
+    /**
+     * 遅延復号のためのメソッドを生成します.
+     * 配列の要素が未だ復号されていなければ, その要素だけを復号して配列に格納します.
+     * 複数のスレッドが同時に復号しても同じ文字列が格納されるだけのため, 同期はしません.
+     */
+    private MethodNode createLookupMethod(ClassNode node,
+                                          String name,
+                                          String encryptedStringsFieldName,
+                                          List<LedgerGroup> groups)
+    {
+        MethodNode lookup = new MethodNode(
+                Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+                name,
+                "(I)Ljava/lang/String;",
+                null,
+                new String[0]
+        );
+        InsnList instructions = lookup.instructions;
+        LabelNode store = new LabelNode();
+        LabelNode found = new LabelNode();
+
+        /// if (ledger[i] != null) return ledger[i];
+        instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, encryptedStringsFieldName, "[Ljava/lang/String;"));
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        instructions.add(new InsnNode(Opcodes.AALOAD));
+        instructions.add(new InsnNode(Opcodes.DUP));
+        instructions.add(new JumpInsnNode(Opcodes.IFNONNULL, found));
+        instructions.add(new InsnNode(Opcodes.POP));
+
+        /// ledger[i] = switch (i) { case n -> decrypt(...); }
+        instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, encryptedStringsFieldName, "[Ljava/lang/String;"));
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+
+        InsnList decryptions = new InsnList();
+        List<LabelNode> cases = new ArrayList<>();
+        for (LedgerGroup group : groups)
+            for (String constant : group.constants)
+            {
+                LabelNode label = new LabelNode();
+                cases.add(label);
+                decryptions.add(label);
+                decryptions.add(this.createDecryption(group, constant));
+                decryptions.add(new JumpInsnNode(Opcodes.GOTO, store));
+            }
+
+        LabelNode unknown = new LabelNode();
+        instructions.add(new TableSwitchInsnNode(0, cases.size() - 1, unknown, cases.toArray(new LabelNode[0])));
+        instructions.add(decryptions);
+
+        instructions.add(unknown);
+        instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+
+        instructions.add(store);
+        instructions.add(new InsnNode(Opcodes.DUP_X2));
+        instructions.add(new InsnNode(Opcodes.AASTORE));
+
+        instructions.add(found);
+        instructions.add(new InsnNode(Opcodes.ARETURN));
+        lookup.maxStack = 5;
+        lookup.maxLocals = 1;
+
+        return lookup;
+    }
+
     @Override
     public ObfuscationTransformer getType()
     {
         return ObfuscationTransformer.STRING_ENCRYPTION;
     }
 
-    private static InsnList generateDecrypterInvocation(ClassNode node,
-                                                        int constantNumber,
-                                                        String encryptedStringsField,
-                                                        String decryptionKey,
-                                                        String decrypterMethodOwnerName,
-                                                        MethodNode decrypterMethod,
-                                                        String encryptedString)
+    private static InsnList generateEncryptedStore(ClassNode node,
+                                                   int constantNumber,
+                                                   String encryptedStringsField,
+                                                   String encryptedString)
     {
         InsnList toAdd = new InsnList();
 
@@ -304,31 +640,32 @@ public class StringEncryptionTransformer implements IClassTransformer
 
         );
         toAdd.add(NodeUtils.generateIntPush(constantNumber));
-
-        /// invokestatic(*string, *string) {
-        toAdd.add(new LdcInsnNode(encryptedString));
-        toAdd.add(new LdcInsnNode(decryptionKey));
-        toAdd.add(new MethodInsnNode(
-                          Opcodes.INVOKESTATIC,
-                          decrypterMethodOwnerName,
-                            decrypterMethod.name,
-                          "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;",
-                          false
-                  )
-        );
-        /// }
-
+        toAdd.add(generateConstantPush(encryptedString));
         toAdd.add(new InsnNode(Opcodes.AASTORE));
         /// }
 
         return toAdd;
     }
 
-    private static String[] createStringConstantReferences(ClassNode node, String referenceName)
+    /**
+     * クラス内の文字列定数を集め, アルゴリズムごとの組に振り分けます.
+     * 鍵はクラスとアルゴリズムごとに 1 つだけ生成するため, 復号時の鍵の導出と {@code Cipher} の初期化も組ごとに 1 度で済みます.
+     * まとめた台帳では, ランダムに選んだ 1 つのアルゴリズムの組にすべての文字列を入れます.
+     */
+    private List<LedgerGroup> collectStringConstants(ClassNode node, boolean packed)
     {
-        LinkedList<String> strings = new LinkedList<>();
+        List<LedgerGroup> groups = new ArrayList<>();
+        if (this.algorithms.isEmpty())
+            groups.add(new LedgerGroup(null, null));
+        else if (packed)
+            groups.add(new LedgerGroup(
+                    this.algorithms.get(random.nextInt(this.algorithms.size())),
+                    StringManipulationUtils.retrieveStrings(5)
+            ));
+        else
+            for (IStringEncryptionAlgorithm algorithm : this.algorithms)
+                groups.add(new LedgerGroup(algorithm, StringManipulationUtils.retrieveStrings(5)));
 
-        int index = 0;
         for (MethodNode method : node.methods)
             for (AbstractInsnNode abstractInsnNode : method.instructions.toArray())
             {
@@ -338,28 +675,50 @@ public class StringEncryptionTransformer implements IClassTransformer
                 if (!(insnNode.cst instanceof String string))
                     continue;
 
-                if (string.length() >= 500)
-                {
-                    log.warn("A constant string value in class " + node.name +
-                                     " is too long (\"" + string.substring(0, 10) +
-                                     "...\", length: " + string.length() +
-                                     "), skipping");
-                    continue;
-                }
+                // ランダムなアルゴリズムを選択
+                LedgerGroup group = groups.get(random.nextInt(groups.size()));
+                group.methods.add(method);
+                group.sites.add(insnNode);
+                group.constants.add(string);
+            }
+
+        groups.removeIf(group -> group.constants.isEmpty());
+        return groups;
+    }
 
+    private static void replaceStringConstants(ClassNode node,
+                                               List<LedgerGroup> groups,
+                                               String referenceName,
+                                               String lookupMethodName)
+    {
+        for (LedgerGroup group : groups)
+            for (int i = 0; i < group.sites.size(); i++)
+            {
+                int index = group.offset + i;
                 InsnList insnList = new InsnList();
 
-                insnList.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, referenceName, "[Ljava/lang/String;"));
-                insnList.add(NodeUtils.generateIntPush(index));
-                insnList.add(new InsnNode(Opcodes.AALOAD));
+                if (lookupMethodName == null)
+                {
+                    insnList.add(new FieldInsnNode(Opcodes.GETSTATIC, node.name, referenceName, "[Ljava/lang/String;"));
+                    insnList.add(NodeUtils.generateIntPush(index));
+                    insnList.add(new InsnNode(Opcodes.AALOAD));
+                }
+                else
+                {
+                    insnList.add(NodeUtils.generateIntPush(index));
+                    insnList.add(new MethodInsnNode(
+                            Opcodes.INVOKESTATIC,
+                            node.name,
+                            lookupMethodName,
+                            "(I)Ljava/lang/String;",
+                            false
+                    ));
+                }
 
-                method.instructions.insert(abstractInsnNode, insnList);
-                method.instructions.remove(abstractInsnNode);
-                strings.add(string);
-                index++;
+                InsnList instructions = group.methods.get(i).instructions;
+                instructions.insert(group.sites.get(i), insnList);
+                instructions.remove(group.sites.get(i));
             }
-
-        return strings.toArray(new String[0]);
     }
 
     private static List<? extends IStringEncryptionAlgorithm> getAlgorithms()
@@ -374,7 +733,35 @@ public class StringEncryptionTransformer implements IClassTransformer
             algorithms.add(new BlowfishEncryptionAlgorithm());
         if (V_ALGO_DES.get())
             algorithms.add(new DESEncryptionAlgorithm());
+        if (V_ALGO_XORSHIFT.get())
+            algorithms.add(new XorShiftEncryptionAlgorithm());
 
         return algorithms;
     }
+
+    /**
+     * 同じアルゴリズムと鍵で暗号化される文字列の組.
+     * 配列上では連続した範囲 {@code [offset, offset + constants.size())} を占めます.
+     */
+    private static class LedgerGroup
+    {
+        /**
+         * 暗号化のアルゴリズム. 有効なアルゴリズムが無い場合は {@code null} です.
+         */
+        private final IStringEncryptionAlgorithm algorithm;
+        private final String key;
+        private final List<String> constants;
+        private final List<MethodNode> methods;
+        private final List<LdcInsnNode> sites;
+        private int offset;
+
+        private LedgerGroup(IStringEncryptionAlgorithm algorithm, String key)
+        {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.constants = new ArrayList<>();
+            this.methods = new ArrayList<>();
+            this.sites = new ArrayList<>();
+        }
+    }
 }
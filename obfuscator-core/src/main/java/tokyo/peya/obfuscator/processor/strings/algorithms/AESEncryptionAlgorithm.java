@@ -16,12 +16,20 @@ import javax.crypto.spec.SecretKeySpec;
 import tokyo.peya.obfuscator.processor.strings.IStringEncryptionAlgorithm;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
 public class AESEncryptionAlgorithm implements IStringEncryptionAlgorithm
 {
 
+    /**
+     * 復号に使う, スレッドと鍵ごとの初期化済み {@link Cipher}.
+     */
+    private static ThreadLocal<Map<String, Cipher>> ciphers;
+
     @Override
     public String getName()
     {
@@ -33,13 +41,8 @@ public class AESEncryptionAlgorithm implements IStringEncryptionAlgorithm
     {
         try
         {
-            SecretKeySpec keySpec = new SecretKeySpec(
-                    MessageDigest.getInstance("SHA-256")
-                                 .digest(key.getBytes(StandardCharsets.UTF_8)), "AES"
-            );
-
             Cipher des = Cipher.getInstance("AES");
-            des.init(Cipher.ENCRYPT_MODE, keySpec);
+            des.init(Cipher.ENCRYPT_MODE, createKey(key));
 
             return new String(
                     Base64.getEncoder().encode(des.doFinal(obj.getBytes(StandardCharsets.UTF_8))),
@@ -58,16 +61,8 @@ public class AESEncryptionAlgorithm implements IStringEncryptionAlgorithm
     {
         try
         {
-            SecretKeySpec keySpec = new SecretKeySpec(
-                    MessageDigest.getInstance("SHA-256")
-                                 .digest(key.getBytes(StandardCharsets.UTF_8)), "AES"
-            );
-
-            Cipher des = Cipher.getInstance("AES");
-            des.init(Cipher.DECRYPT_MODE, keySpec);
-
             return new String(
-                    des.doFinal(Base64.getDecoder().decode(obj.getBytes(StandardCharsets.UTF_8))),
+                    getCipher(key).doFinal(Base64.getDecoder().decode(obj.getBytes(StandardCharsets.UTF_8))),
                     StandardCharsets.UTF_8
             );
 
@@ -78,4 +73,52 @@ public class AESEncryptionAlgorithm implements IStringEncryptionAlgorithm
         }
         return null;
     }
+
+    public static void decryptAll(String[] ledger, int from, int to, String key)
+    {
+        try
+        {
+            Cipher des = getCipher(key);
+            Base64.Decoder decoder = Base64.getDecoder();
+            for (int i = from; i < to; i++)
+                ledger[i] = new String(
+                        des.doFinal(decoder.decode(ledger[i].getBytes(StandardCharsets.UTF_8))),
+                        StandardCharsets.UTF_8
+                );
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static Cipher getCipher(String key) throws GeneralSecurityException
+    {
+        // 復号クラスに静的初期化子を持たせないよう遅延して作る. 競合しても, キャッシュを 1 度作り直すだけで済む
+        ThreadLocal<Map<String, Cipher>> local = ciphers;
+        if (local == null)
+            ciphers = local = new ThreadLocal<>();
+
+        Map<String, Cipher> cache = local.get();
+        if (cache == null)
+            local.set(cache = new HashMap<>());
+
+        Cipher des = cache.get(key);
+        if (des == null)
+        {
+            des = Cipher.getInstance("AES");
+            des.init(Cipher.DECRYPT_MODE, createKey(key));
+            cache.put(key, des);
+        }
+
+        return des;
+    }
+
+    private static SecretKeySpec createKey(String key) throws GeneralSecurityException
+    {
+        return new SecretKeySpec(
+                MessageDigest.getInstance("SHA-256")
+                             .digest(key.getBytes(StandardCharsets.UTF_8)), "AES"
+        );
+    }
 }
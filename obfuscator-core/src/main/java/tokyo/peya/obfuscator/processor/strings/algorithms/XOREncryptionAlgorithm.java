@@ -55,4 +55,10 @@ public class XOREncryptionAlgorithm implements IStringEncryptionAlgorithm
         }
         return sb.toString();
     }
+
+    public static void decryptAll(String[] ledger, int from, int to, String key)
+    {
+        for (int i = from; i < to; i++)
+            ledger[i] = decrypt(ledger[i], key);
+    }
 }
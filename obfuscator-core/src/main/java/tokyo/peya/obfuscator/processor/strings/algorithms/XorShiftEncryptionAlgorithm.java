@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.processor.strings.algorithms;
+
+import tokyo.peya.obfuscator.processor.strings.IStringEncryptionAlgorithm;
+
+/**
+ * 鍵から生成した xorshift 乱数列と文字ごとに XOR を取る, 軽量な文字列の保護です.
+ * 暗号文は Base64 を経由せず文字列のまま格納するため, 復号は {@code char[]} の上で完結し,
+ * 文字列の生成も {@code new String(char[])} の 1 回だけで済みます.
+ * 暗号としての強度はありませんが, JCE を使うアルゴリズムよりはるかに高速に復号できます.
+ */
+public class XorShiftEncryptionAlgorithm implements IStringEncryptionAlgorithm
+{
+
+    @Override
+    public String getName()
+    {
+        return "XorShift";
+    }
+
+    @Override
+    public String encrypt(String obj, String key)
+    {
+        // XOR は対称なため, 暗号化も復号と同じ処理になる
+        return decrypt(obj, key);
+    }
+
+    public static String decrypt(String obj, String key)
+    {
+        char[] chars = obj.toCharArray();
+        // 同じ鍵でも長さの異なる文字列では異なる乱数列を使う. xorshift は 0 から抜け出せないため, 下位ビットを立てる
+        int state = (key.hashCode() ^ chars.length * 0x9E3779B9) | 1;
+        for (int i = 0; i < chars.length; i++)
+        {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+            chars[i] ^= (char) state;
+        }
+
+        return new String(chars);
+    }
+
+    public static void decryptAll(String[] ledger, int from, int to, String key)
+    {
+        for (int i = from; i < to; i++)
+            ledger[i] = decrypt(ledger[i], key);
+    }
+}
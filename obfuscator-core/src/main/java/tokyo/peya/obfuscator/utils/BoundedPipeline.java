@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package tokyo.peya.obfuscator.utils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 順序を保ったまま, 一定数のタスクだけを同時に処理するパイプライン.
+ * <p>
+ * 投入されたタスクは並列に実行されますが, 結果は投入順に呼び出し元スレッドで消費されます.
+ * 未消費の結果がウィンドウ・サイズに達した場合は, 先頭の結果を消費するまで投入をブロックするため,
+ * メモリに保持される結果の数は常にウィンドウ・サイズ以下になります.
+ *
+ * @param <T> タスクの結果の型
+ */
+public class BoundedPipeline<T> implements AutoCloseable
+{
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int window;
+    private final Deque<Future<T>> pending;
+    private final ResultConsumer<? super T> consumer;
+
+    public BoundedPipeline(int threads, int window, ResultConsumer<? super T> consumer)
+    {
+        this(Executors.newFixedThreadPool(Math.max(1, threads)), true, window, consumer);
+    }
+
+    /**
+     * 既存の実行サービスでタスクを実行するパイプラインを作成します.
+     * 実行サービスは {@link #close()} でシャットダウンされません.
+     *
+     * @param executor タスクを実行する実行サービス
+     * @param window   ウィンドウ・サイズ
+     * @param consumer 結果を消費する処理
+     */
+    public BoundedPipeline(ExecutorService executor, int window, ResultConsumer<? super T> consumer)
+    {
+        this(executor, false, window, consumer);
+    }
+
+    private BoundedPipeline(ExecutorService executor, boolean ownsExecutor, int window, ResultConsumer<? super T> consumer)
+    {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.window = Math.max(1, window);
+        this.pending = new ArrayDeque<>(this.window);
+        this.consumer = consumer;
+    }
+
+    /**
+     * タスクを投入します. ウィンドウが埋まっている場合は, 先頭の結果を消費してから投入します.
+     *
+     * @param task 実行するタスク
+     */
+    public void submit(Callable<T> task) throws IOException, InterruptedException
+    {
+        this.drain(this.window - 1);
+        this.pending.addLast(this.executor.submit(task));
+    }
+
+    /**
+     * 既に計算済みの結果を, 投入順を保ったまま追加します.
+     *
+     * @param result 結果
+     */
+    public void offer(T result) throws IOException, InterruptedException
+    {
+        this.drain(this.window - 1);
+        this.pending.addLast(CompletableFuture.completedFuture(result));
+    }
+
+    /**
+     * 全てのタスクの完了を待ち, 残りの結果を全て消費します.
+     */
+    public void finish() throws IOException, InterruptedException
+    {
+        this.drain(0);
+    }
+
+    private void drain(int remaining) throws IOException, InterruptedException
+    {
+        while (this.pending.size() > remaining)
+        {
+            Future<T> head = this.pending.removeFirst();
+            T result;
+            try
+            {
+                result = head.get();
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                else if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                else if (cause instanceof Error)
+                    throw (Error) cause;
+
+                throw new IOException(cause);
+            }
+
+            this.consumer.accept(result);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        this.pending.forEach(future -> future.cancel(true));
+        this.pending.clear();
+        if (this.ownsExecutor)
+            this.executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface ResultConsumer<T>
+    {
+        void accept(T result) throws IOException;
+    }
+}
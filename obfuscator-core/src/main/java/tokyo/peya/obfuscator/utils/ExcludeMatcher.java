@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 除外パターンの一覧を, パッケージの区切りごとの木にまとめて照合します.
+ * <p>
+ * パターンでは {@code .} と {@code /} を同じ区切りとして扱い, 次のワイルドカードが使えます.
+ * <ul>
+ *     <li>{@code *} - 区切りを含まない 1 文字以上</li>
+ *     <li>{@code **} - 区切りを含む 1 文字以上</li>
+ * </ul>
+ * 名前は区切りごとに 1 度だけ木を辿ります. パッケージ（最後の区切りより前）まで辿った状態は記録され,
+ * 同じパッケージの名前は最後の区切りから先だけを照合します.
+ * {@code **} を含むパターンは, その区切りから名前の終わりまでを後でまとめて照合します.
+ * <p>
+ * メンバの名前（{@code a/b/C.member}）では, パターンの最後の要素の {@code *} はクラス名とメンバ名の間の {@code .} も越えます.
+ * 以前の実装と同じく, {@code a.b.*} は {@code a/b/C.member} にも一致します.
+ */
+public class ExcludeMatcher
+{
+    private final Node root;
+    private final Map<String, State> prefixStates;
+    private State rootState;
+    private boolean empty;
+
+    private ExcludeMatcher()
+    {
+        this.root = new Node();
+        this.prefixStates = new ConcurrentHashMap<>();
+        this.empty = true;
+    }
+
+    /**
+     * 改行で区切られたパターンの一覧から作成します. 空の行は無視されます.
+     *
+     * @param patterns パターンの一覧
+     * @return 作成したマッチャ
+     */
+    public static ExcludeMatcher compile(String patterns)
+    {
+        ExcludeMatcher matcher = new ExcludeMatcher();
+        for (String pattern : patterns.split("\n"))
+        {
+            String trimmed = pattern.trim();
+            if (!trimmed.isEmpty())
+                matcher.add(trimmed);
+        }
+
+        matcher.rootState = new State(new Node[0], new Tail[0], new int[0]).enter(matcher.root, 0);
+        return matcher;
+    }
+
+    private void add(String pattern)
+    {
+        this.empty = false;
+        String[] segments = pattern.replace('.', '/').split("/", -1);
+
+        Node node = this.root;
+        for (int i = 0; i < segments.length; i++)
+        {
+            String segment = segments[i];
+            if (segment.contains("**"))
+            {
+                node.tails.add(new Tail(String.join("/", List.of(segments).subList(i, segments.length)), pattern));
+                return;
+            }
+            else if (segment.indexOf('*') >= 0)
+                node = node.wildcards.computeIfAbsent(segment, k -> new Node());
+            else
+                node = node.literals.computeIfAbsent(segment, k -> new Node());
+        }
+
+        if (node.terminal == null)
+            node.terminal = pattern;
+    }
+
+    public boolean matches(String name)
+    {
+        return this.findMatch(name) != null;
+    }
+
+    /**
+     * 名前に一致するパターンを探します.
+     *
+     * @param name 内部名（{@code a/b/C}）, または {@code a/b/C.member} の形の名前
+     * @return 一致したパターン, 一致しない場合は {@code null}
+     */
+    public String findMatch(String name)
+    {
+        if (this.empty)
+            return null;
+
+        int prefixEnd = lastSeparator(name, name.length());
+        State state = prefixEnd < 0 ? this.rootState: this.stateOf(name, prefixEnd);
+
+        String terminal = state.findTerminal(name, prefixEnd + 1, name.length());
+        if (terminal != null)
+            return terminal;
+
+        String tail = state.findTail(name);
+        if (tail != null)
+            return tail;
+
+        return this.findMemberMatch(name, prefixEnd);
+    }
+
+    /**
+     * メンバの名前を, クラス名の位置で終わるワイルドカードのパターンと照合します.
+     * このとき {@code *} は, クラス名とメンバ名の間の {@code .} も越えます.
+     */
+    private String findMemberMatch(String name, int prefixEnd)
+    {
+        int classEnd = name.lastIndexOf('/');
+        if (prefixEnd <= classEnd)  // 最後の区切りが . でなければ, メンバではない
+            return null;
+
+        State state = classEnd < 0 ? this.rootState: this.stateOf(name, classEnd);
+        return state.findMemberTerminal(name, classEnd + 1, name.length());
+    }
+
+    private State stateOf(String name, int prefixEnd)
+    {
+        String prefix = name.substring(0, prefixEnd);
+        State state = this.prefixStates.get(prefix);
+        if (state != null)
+            return state;
+
+        int parentEnd = lastSeparator(name, prefixEnd);
+        State parent = parentEnd < 0 ? this.rootState: this.stateOf(name, parentEnd);
+        state = parent.advance(name, parentEnd + 1, prefixEnd);
+
+        State existing = this.prefixStates.putIfAbsent(prefix, state);
+        return existing == null ? state: existing;
+    }
+
+    private static int lastSeparator(String name, int end)
+    {
+        for (int i = end - 1; i >= 0; i--)
+            if (isSeparator(name.charAt(i)))
+                return i;
+
+        return -1;
+    }
+
+    private static boolean isSeparator(char c)
+    {
+        return c == '/' || c == '.';
+    }
+
+    /**
+     * {@code glob} の {@code globIndex} 以降が, {@code text} の {@code [textIndex, textEnd)} に一致するかを調べます.
+     */
+    private static boolean globMatches(String glob, int globIndex, String text, int textIndex, int textEnd)
+    {
+        return globMatches(glob, globIndex, text, textIndex, textEnd, false);
+    }
+
+    /**
+     * @param crossDots {@code true} の場合, {@code *} は {@code .} を越え, {@code /} でのみ止まります
+     */
+    private static boolean globMatches(String glob, int globIndex, String text, int textIndex, int textEnd,
+                                       boolean crossDots)
+    {
+        while (globIndex < glob.length())
+        {
+            char g = glob.charAt(globIndex);
+            if (g == '*')
+            {
+                boolean deep = globIndex + 1 < glob.length() && glob.charAt(globIndex + 1) == '*';
+                int next = globIndex + (deep ? 2: 1);
+                // ワイルドカードは 1 文字以上に一致する
+                for (int end = textIndex + 1; end <= textEnd; end++)
+                {
+                    char c = text.charAt(end - 1);
+                    if (!deep && (crossDots ? c == '/': isSeparator(c)))
+                        return false;
+                    if (globMatches(glob, next, text, end, textEnd, crossDots))
+                        return true;
+                }
+
+                return false;
+            }
+
+            if (textIndex >= textEnd)
+                return false;
+
+            char t = text.charAt(textIndex);
+            if (g == '/' ? !isSeparator(t): g != t)
+                return false;
+
+            globIndex++;
+            textIndex++;
+        }
+
+        return textIndex == textEnd;
+    }
+
+    private static class Node
+    {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final Map<String, Node> wildcards = new HashMap<>();
+        private final List<Tail> tails = new ArrayList<>();
+        private String terminal;
+    }
+
+    private static class Tail
+    {
+        private final String glob;
+        private final String pattern;
+
+        private Tail(String glob, String pattern)
+        {
+            this.glob = glob;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * 名前の先頭から幾つかの区切りまでを辿った状態.
+     * 辿り着いた節と, 途中で見つかった {@code **} を含むパターン（とその開始位置）を持つ.
+     */
+    private static class State
+    {
+        private final Node[] nodes;
+        private final Tail[] tails;
+        private final int[] tailOffsets;
+
+        private State(Node[] nodes, Tail[] tails, int[] tailOffsets)
+        {
+            this.nodes = nodes;
+            this.tails = tails;
+            this.tailOffsets = tailOffsets;
+        }
+
+        private State enter(Node node, int offset)
+        {
+            Node[] nodes = new Node[this.nodes.length + 1];
+            System.arraycopy(this.nodes, 0, nodes, 0, this.nodes.length);
+            nodes[this.nodes.length] = node;
+
+            if (node.tails.isEmpty())
+                return new State(nodes, this.tails, this.tailOffsets);
+
+            int size = this.tails.length;
+            Tail[] tails = new Tail[size + node.tails.size()];
+            int[] tailOffsets = new int[tails.length];
+            System.arraycopy(this.tails, 0, tails, 0, size);
+            System.arraycopy(this.tailOffsets, 0, tailOffsets, 0, size);
+            for (int i = 0; i < node.tails.size(); i++)
+            {
+                tails[size + i] = node.tails.get(i);
+                tailOffsets[size + i] = offset;
+            }
+
+            return new State(nodes, tails, tailOffsets);
+        }
+
+        private State advance(String name, int start, int end)
+        {
+            State next = new State(new Node[0], this.tails, this.tailOffsets);
+            String segment = name.substring(start, end);
+            for (Node node : this.nodes)
+            {
+                Node literal = node.literals.get(segment);
+                if (literal != null)
+                    next = next.enter(literal, end + 1);
+
+                for (Map.Entry<String, Node> wildcard : node.wildcards.entrySet())
+                    if (globMatches(wildcard.getKey(), 0, segment, 0, segment.length()))
+                        next = next.enter(wildcard.getValue(), end + 1);
+            }
+
+            return next;
+        }
+
+        private String findTerminal(String name, int start, int end)
+        {
+            if (this.nodes.length == 0)
+                return null;
+
+            String segment = name.substring(start, end);
+            for (Node node : this.nodes)
+            {
+                Node literal = node.literals.get(segment);
+                if (literal != null && literal.terminal != null)
+                    return literal.terminal;
+
+                for (Map.Entry<String, Node> wildcard : node.wildcards.entrySet())
+                    if (wildcard.getValue().terminal != null
+                            && globMatches(wildcard.getKey(), 0, segment, 0, segment.length()))
+                        return wildcard.getValue().terminal;
+            }
+
+            return null;
+        }
+
+        private String findMemberTerminal(String name, int start, int end)
+        {
+            String segment = name.substring(start, end);
+            for (Node node : this.nodes)
+                for (Map.Entry<String, Node> wildcard : node.wildcards.entrySet())
+                    if (wildcard.getValue().terminal != null
+                            && globMatches(wildcard.getKey(), 0, segment, 0, segment.length(), true))
+                        return wildcard.getValue().terminal;
+
+            return null;
+        }
+
+        private String findTail(String name)
+        {
+            for (int i = 0; i < this.tails.length; i++)
+                if (globMatches(this.tails[i].glob, 0, name, this.tailOffsets[i], name.length()))
+                    return this.tails[i].pattern;
+
+            return null;
+        }
+    }
+}
@@ -28,7 +28,6 @@ import org.objectweb.asm.util.Printer;
 import org.objectweb.asm.util.Textifier;
 import org.objectweb.asm.util.TraceMethodVisitor;
 import tokyo.peya.obfuscator.JavaObfuscator;
-import tokyo.peya.obfuscator.clazz.ClassTree;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -377,16 +376,16 @@ public class NodeUtils
         return node.name.equals("valueOf") || node.name.equals("values");
     }
 
-    public static boolean isSpecialMethod(MethodNode method, ClassTree tree)
+    public static boolean isSpecialMethod(MethodNode method, ClassNode clazz)
     {
         if (isSpecialMethod(method))
             return true;
 
-        boolean isEnum = tree.parentClasses.contains("java/lang/Enum");
+        boolean isEnum = "java/lang/Enum".equals(clazz.superName);
         if (isEnum)
             return isEnumSpecialMethod(method);
 
-        return isAnnotationSpecialMethod(method, tree.classWrapper.classNode);
+        return isAnnotationSpecialMethod(method, clazz);
     }
 
     public static boolean isAnnotationSpecialMethod(MethodNode field, ClassNode clazz)
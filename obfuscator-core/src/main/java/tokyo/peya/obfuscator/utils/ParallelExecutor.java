@@ -1,61 +0,0 @@
-/*
- * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
- * Copyright (c) 2025 Peyang
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
- */
-
-package tokyo.peya.obfuscator.utils;
-
-import lombok.extern.slf4j.Slf4j;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.function.Supplier;
-
-@Slf4j
-public class ParallelExecutor
-{
-    public static <T> List<T> runInParallel(int threads, Supplier<Callable<T>> taskSupplier) {
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
-        List<Future<T>> futures = new ArrayList<>();
-
-        for (int i = 0; i < threads; i++) {
-            futures.add(executor.submit(taskSupplier.get()));
-        }
-
-        List<T> results = new ArrayList<>();
-        for (Future<T> future : futures) {
-            try {
-                results.add(future.get());
-            } catch (InterruptedException | ExecutionException e) {
-                log.error("Error executing task in parallel", e);
-            }
-        }
-
-        executor.shutdown();
-        return results;
-    }
-
-    public static <K, V> Map<K, V> runInParallelAndMerge(int threads, Supplier<Callable<Map<K, V>>> taskSupplier) {
-        List<Map<K, V>> resultList = runInParallel(threads, taskSupplier);
-        Map<K, V> merged = new HashMap<>();
-        for (Map<K, V> result : resultList) {
-            if (result != null) {
-                merged.putAll(result);
-            }
-        }
-        return merged;
-    }
-}
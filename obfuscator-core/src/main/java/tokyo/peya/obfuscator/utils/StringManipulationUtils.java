@@ -44,4 +44,28 @@ public class StringManipulationUtils
             stringBuilder.append((char) random.nextInt(255));
         return stringBuilder.toString();
     }
+
+    /**
+     * 文字を定数プールに格納したときの, 修正 UTF-8 でのバイト数を返します.
+     */
+    public static int getModifiedUtf8Length(char c)
+    {
+        if (c != 0 && c < 0x80)
+            return 1;
+        else if (c < 0x800)
+            return 2;
+        else
+            return 3;
+    }
+
+    /**
+     * 文字列を定数プールに格納したときの, 修正 UTF-8 でのバイト数を返します.
+     */
+    public static int getModifiedUtf8Length(String s)
+    {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++)
+            length += getModifiedUtf8Length(s.charAt(i));
+        return length;
+    }
 }
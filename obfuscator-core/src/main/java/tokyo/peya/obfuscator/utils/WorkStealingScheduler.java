@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 難読化の各フェーズで共有される, ワーク・スティーリング方式のスケジューラ.
+ * <p>
+ * 要素はバッチに分割して {@link ForkJoinPool} に投入され, 手の空いたワーカが他のワーカのバッチを奪って処理します.
+ * プールは最初に使用されたときに作成され, {@link #close()} されるまで全てのフェーズで再利用されます.
+ */
+public class WorkStealingScheduler implements AutoCloseable
+{
+    /**
+     * ワーカあたりのバッチ数. 処理時間にばらつきがあっても偏りが出ないよう, ある程度細かく分割する.
+     */
+    private static final int BATCHES_PER_WORKER = 8;
+
+    private final int parallelism;
+    private ForkJoinPool pool;
+
+    public WorkStealingScheduler(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 全ての要素に対して処理を並列に実行し, 完了するまで待機します.
+     * <p>
+     * 処理中に例外が発生した場合は, 他のバッチの完了を待たずに呼び出し元へ再送出されます.
+     * 結果を集める場合は, {@link java.util.concurrent.ConcurrentHashMap} などのスレッド・セーフな構造に格納してください.
+     *
+     * @param items  処理する要素
+     * @param action 各要素に対する処理
+     * @param <T>    要素の型
+     */
+    public <T> void forEach(Collection<? extends T> items, Consumer<? super T> action)
+    {
+        if (items.isEmpty())
+            return;
+
+        List<T> list = new ArrayList<>(items);
+        int batchSize = Math.max(1, list.size() / (this.parallelism * BATCHES_PER_WORKER));
+        if (this.parallelism == 1 || list.size() <= batchSize)
+        {
+            list.forEach(action);
+            return;
+        }
+
+        this.getPool().invoke(new BatchAction<>(list, 0, list.size(), batchSize, action));
+    }
+
+    /**
+     * 他の並列処理（{@link BoundedPipeline} など）と共有するための実行サービスを返します.
+     *
+     * @return このスケジューラのプール
+     */
+    public ExecutorService getExecutor()
+    {
+        return this.getPool();
+    }
+
+    private synchronized ForkJoinPool getPool()
+    {
+        if (this.pool == null)
+            this.pool = new ForkJoinPool(
+                    this.parallelism,
+                    pool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                        thread.setName("Obfuscator-Worker-" + thread.getPoolIndex());
+                        return thread;
+                    },
+                    null,
+                    false
+            );
+
+        return this.pool;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (this.pool == null)
+            return;
+
+        this.pool.shutdownNow();
+        try
+        {
+            this.pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        this.pool = null;
+    }
+
+    @SuppressWarnings("serial")  // シリアライズはしない
+    private static class BatchAction<T> extends RecursiveAction
+    {
+        private final List<T> items;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+        private final Consumer<? super T> action;
+
+        private BatchAction(List<T> items, int from, int to, int batchSize, Consumer<? super T> action)
+        {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from <= this.batchSize)
+            {
+                for (int i = this.from; i < this.to; i++)
+                    this.action.accept(this.items.get(i));
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(
+                    new BatchAction<>(this.items, this.from, middle, this.batchSize, this.action),
+                    new BatchAction<>(this.items, middle, this.to, this.batchSize, this.action)
+            );
+        }
+    }
+}
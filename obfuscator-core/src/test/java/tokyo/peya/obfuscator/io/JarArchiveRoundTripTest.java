@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link JarArchiveWriter} で書き込んだアーカイブを, {@link JarArchiveReader} と
+ * {@link ZipFile} の両方で読み戻せることを確認します.
+ */
+class JarArchiveRoundTripTest
+{
+    /**
+     * ZIP64 のエントリ数の上限を超える数.
+     */
+    private static final int ZIP64_ENTRY_COUNT = 70000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storedEntries() throws IOException
+    {
+        Path archive = this.tempDir.resolve("stored.jar");
+        Map<String, byte[]> contents = sampleContents();
+        write(archive, true, contents);
+
+        assertRoundTrip(archive, contents, ZipEntry.STORED);
+    }
+
+    @Test
+    void deflatedEntries() throws IOException
+    {
+        Path archive = this.tempDir.resolve("deflated.jar");
+        Map<String, byte[]> contents = sampleContents();
+        write(archive, false, contents);
+
+        assertRoundTrip(archive, contents, ZipEntry.DEFLATED);
+    }
+
+    @Test
+    void directoryEntries() throws IOException
+    {
+        Path archive = this.tempDir.resolve("directories.jar");
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("META-INF/", new byte[0]);
+        contents.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        contents.put("a/", new byte[0]);
+        contents.put("a/b/", new byte[0]);
+        contents.put("a/b/C.class", bytes(128, 7));
+        write(archive, false, contents);
+
+        try (JarArchiveReader reader = new JarArchiveReader(archive))
+        {
+            List<ArchiveEntry> entries = reader.getEntries();
+            assertEquals(contents.size(), entries.size());
+            for (ArchiveEntry entry : entries)
+            {
+                boolean directory = entry.getName().endsWith("/");
+                assertEquals(directory, entry.isDirectory(), entry.getName());
+                if (directory)
+                {
+                    // ディレクトリは, 圧縮の指定にかかわらず格納される
+                    assertEquals(ZipEntry.STORED, entry.getMethod(), entry.getName());
+                    assertEquals(0, entry.getSize(), entry.getName());
+                    assertEquals(0, reader.read(entry).length, entry.getName());
+                }
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile()))
+        {
+            ZipEntry directory = zip.getEntry("a/b/");
+            assertNotNull(directory);
+            assertTrue(directory.isDirectory());
+            assertFalse(zip.getEntry("a/b/C.class").isDirectory());
+        }
+    }
+
+    @Test
+    void duplicateEntryIsRejected() throws IOException
+    {
+        Path archive = this.tempDir.resolve("duplicate.jar");
+        try (OutputStream out = Files.newOutputStream(archive);
+             JarArchiveWriter writer = new JarArchiveWriter(out, false, 2))
+        {
+            writer.write("a/B.class", bytes(64, 1));
+            assertThrows(ZipException.class, () -> writer.write("a/B.class", bytes(64, 2)));
+            writer.write("a/C.class", bytes(64, 3));
+        }
+
+        // 重複したエントリは書き込まれず, それ以外のエントリは残る
+        try (JarArchiveReader reader = new JarArchiveReader(archive))
+        {
+            List<ArchiveEntry> entries = reader.getEntries();
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes(64, 1), reader.read(entries.get(0)));
+            assertArrayEquals(bytes(64, 3), reader.read(entries.get(1)));
+        }
+    }
+
+    @Test
+    void zip64EntryCount() throws IOException
+    {
+        Path archive = this.tempDir.resolve("zip64.jar");
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (int i = 0; i < ZIP64_ENTRY_COUNT; i++)
+            contents.put("p" + (i / 1000) + "/E" + i + ".class", ("entry " + i).getBytes(StandardCharsets.UTF_8));
+        write(archive, false, contents);
+
+        try (JarArchiveReader reader = new JarArchiveReader(archive))
+        {
+            List<ArchiveEntry> entries = reader.getEntries();
+            assertEquals(ZIP64_ENTRY_COUNT, entries.size());
+
+            byte[][] data = reader.readAll(4, entry -> {});
+            int i = 0;
+            for (Map.Entry<String, byte[]> expected : contents.entrySet())
+            {
+                assertEquals(expected.getKey(), entries.get(i).getName());
+                assertArrayEquals(expected.getValue(), data[i]);
+                i++;
+            }
+        }
+
+        // 標準のリーダも ZIP64 のレコードからエントリ数を読み取れる
+        try (ZipFile zip = new ZipFile(archive.toFile()))
+        {
+            assertEquals(ZIP64_ENTRY_COUNT, zip.size());
+
+            int count = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream in = zip.getInputStream(entry))
+                {
+                    assertArrayEquals(contents.get(entry.getName()), in.readAllBytes(), entry.getName());
+                }
+                count++;
+            }
+            assertEquals(ZIP64_ENTRY_COUNT, count);
+        }
+    }
+
+    private static void assertRoundTrip(Path archive, Map<String, byte[]> contents, int method) throws IOException
+    {
+        try (JarArchiveReader reader = new JarArchiveReader(archive))
+        {
+            List<ArchiveEntry> entries = reader.getEntries();
+            assertEquals(contents.size(), entries.size());
+
+            // 書き込んだ順序が保たれる
+            int i = 0;
+            for (Map.Entry<String, byte[]> expected : contents.entrySet())
+            {
+                ArchiveEntry entry = entries.get(i++);
+                assertEquals(expected.getKey(), entry.getName());
+                assertEquals(method, entry.getMethod(), entry.getName());
+                assertEquals(expected.getValue().length, entry.getSize(), entry.getName());
+                assertArrayEquals(expected.getValue(), reader.read(entry), entry.getName());
+            }
+
+            byte[][] data = reader.readAll(4, entry -> {});
+            i = 0;
+            for (byte[] expected : contents.values())
+                assertArrayEquals(expected, data[i++]);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile()))
+        {
+            assertEquals(contents.size(), zip.size());
+            for (Map.Entry<String, byte[]> expected : contents.entrySet())
+            {
+                ZipEntry entry = zip.getEntry(expected.getKey());
+                assertNotNull(entry, expected.getKey());
+                assertEquals(method, entry.getMethod(), expected.getKey());
+                try (InputStream in = zip.getInputStream(entry))
+                {
+                    assertArrayEquals(expected.getValue(), in.readAllBytes(), expected.getKey());
+                }
+            }
+        }
+    }
+
+    private static void write(Path archive, boolean stored, Map<String, byte[]> contents) throws IOException
+    {
+        try (OutputStream out = Files.newOutputStream(archive);
+             JarArchiveWriter writer = new JarArchiveWriter(out, stored, 4))
+        {
+            for (Map.Entry<String, byte[]> entry : contents.entrySet())
+                writer.write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static Map<String, byte[]> sampleContents()
+    {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("empty.txt", new byte[0]);
+        contents.put("a/Small.class", bytes(16, 1));
+        contents.put("a/b/Compressible.class", new byte[1 << 16]);
+        contents.put("a/b/Random.class", bytes(1 << 17, 42));
+        contents.put("日本語/名前.txt", "こんにちは".getBytes(StandardCharsets.UTF_8));
+        return contents;
+    }
+
+    /**
+     * 圧縮しにくい, 決定的な内容を生成します.
+     */
+    private static byte[] bytes(int length, long seed)
+    {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017-2019 superblaubeere27, Sam Sun, MarcoMC
+ * Copyright (c) 2025 Peyang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package tokyo.peya.obfuscator.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExcludeMatcherTest
+{
+    @Test
+    void emptyPatterns()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("\n  \n");
+
+        assertFalse(matcher.matches("a/b/C"));
+        assertFalse(matcher.matches("C"));
+    }
+
+    @Test
+    void literalPatterns()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a/b/C\nTop");
+
+        assertTrue(matcher.matches("a/b/C"));
+        assertTrue(matcher.matches("Top"));
+        assertFalse(matcher.matches("a/b/D"));
+        assertFalse(matcher.matches("a/b/CC"));
+        assertFalse(matcher.matches("a/b"));
+        assertFalse(matcher.matches("a/b/C/D"));
+        assertFalse(matcher.matches("x/Top"));
+    }
+
+    @Test
+    void singleWildcardAtRoot()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("*");
+
+        assertTrue(matcher.matches("Main"));
+        // 区切りを越えない
+        assertFalse(matcher.matches("a/Main"));
+    }
+
+    @Test
+    void singleWildcardMidPath()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a/*/C\na/b/*Impl");
+
+        assertTrue(matcher.matches("a/b/C"));
+        assertTrue(matcher.matches("a/xyz/C"));
+        assertFalse(matcher.matches("a/b/c/C"));
+        assertFalse(matcher.matches("a/C"));
+
+        assertTrue(matcher.matches("a/b/FooImpl"));
+        // ワイルドカードは 1 文字以上に一致する
+        assertFalse(matcher.matches("a/b/Impl"));
+        assertFalse(matcher.matches("a/b/c/FooImpl"));
+    }
+
+    @Test
+    void doubleWildcardAtRoot()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("**");
+
+        assertTrue(matcher.matches("Main"));
+        assertTrue(matcher.matches("a/b/c/Main"));
+        assertTrue(matcher.matches("a/b/C.method"));
+    }
+
+    @Test
+    void doubleWildcardMidPath()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a/**\nx/**/Impl");
+
+        assertTrue(matcher.matches("a/B"));
+        assertTrue(matcher.matches("a/b/c/D"));
+        assertFalse(matcher.matches("a"));
+        assertFalse(matcher.matches("b/a/C"));
+
+        assertTrue(matcher.matches("x/y/Impl"));
+        assertTrue(matcher.matches("x/y/z/Impl"));
+        assertFalse(matcher.matches("x/Impl"));
+        assertFalse(matcher.matches("x/y/Impl2"));
+    }
+
+    @Test
+    void innerClassNames()
+    {
+        // '$' はワイルドカードではなく, そのままの文字として扱われる
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a/Outer$Inner\nb/Outer$*");
+
+        assertTrue(matcher.matches("a/Outer$Inner"));
+        assertFalse(matcher.matches("a/Outer"));
+        assertFalse(matcher.matches("a/OuterXInner"));
+        assertFalse(matcher.matches("a/Outer$Inner$Deep"));
+
+        assertTrue(matcher.matches("b/Outer$1"));
+        assertTrue(matcher.matches("b/Outer$Inner"));
+        assertFalse(matcher.matches("b/Outer"));
+    }
+
+    @Test
+    void memberPatterns()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a.b.C.method\na.b.D.*");
+
+        assertTrue(matcher.matches("a/b/C.method"));
+        assertFalse(matcher.matches("a/b/C.other"));
+        assertFalse(matcher.matches("a/b/C"));
+
+        assertTrue(matcher.matches("a/b/D.anything"));
+        assertTrue(matcher.matches("a/b/D.field"));
+        // クラス自体は, メンバのパターンには一致しない
+        assertFalse(matcher.matches("a/b/D"));
+    }
+
+    @Test
+    void trailingWildcardCoversMembers()
+    {
+        // 以前の実装と同じく, 最後の要素の * はクラス名とメンバ名の間の . を越える
+        ExcludeMatcher matcher = ExcludeMatcher.compile("pkg.*\nother.Foo*");
+
+        assertTrue(matcher.matches("pkg/Cls"));
+        assertTrue(matcher.matches("pkg/Cls.member"));
+        assertTrue(matcher.matches("other/FooBar.member"));
+        assertTrue(matcher.matches("other/Foo.member"));
+        // / は越えない
+        assertFalse(matcher.matches("pkg/sub/Cls.member"));
+        assertFalse(matcher.matches("other/Bar.member"));
+    }
+
+    @Test
+    void dotAndSlashAreEquivalent()
+    {
+        ExcludeMatcher dotted = ExcludeMatcher.compile("a.b.C\nx.**.Impl");
+        ExcludeMatcher slashed = ExcludeMatcher.compile("a/b/C\nx/**/Impl");
+
+        for (ExcludeMatcher matcher : List.of(dotted, slashed))
+        {
+            assertTrue(matcher.matches("a/b/C"));
+            assertTrue(matcher.matches("a.b.C"));
+            assertTrue(matcher.matches("a/b.C"));
+            assertTrue(matcher.matches("x/y/z/Impl"));
+            assertTrue(matcher.matches("x.y.z.Impl"));
+            assertFalse(matcher.matches("a/b/D"));
+        }
+    }
+
+    @Test
+    void findMatchReturnsPattern()
+    {
+        ExcludeMatcher matcher = ExcludeMatcher.compile("a.b.C\n  a/**  \n");
+
+        assertEquals("a.b.C", matcher.findMatch("a/b/C"));
+        assertEquals("a/**", matcher.findMatch("a/b/D"));
+        assertNull(matcher.findMatch("b/C"));
+    }
+
+    @Test
+    void memoisedPrefixIsReusedAcrossClasses()
+    {
+        String patterns = "a/b/Keep\na/b/*Impl\na/**/Api\na/b/Keep.run\na/*/c/D";
+        ExcludeMatcher shared = ExcludeMatcher.compile(patterns);
+
+        // 同じパッケージ（と, その親のパッケージ）の名前を続けて照合し, 記録された状態を使い回させる.
+        // 子のパッケージを先に照合し, 親のパッケージの状態が途中で記録される場合も含める.
+        String[] names = {
+                "a/b/c/D",
+                "a/b/Keep",
+                "a/b/Other",
+                "a/b/FooImpl",
+                "a/b/Api",
+                "a/b/Keep.run",
+                "a/b/Keep.stop",
+                "a/b/c/E",
+                "a/b/Keep",
+                "a/x/c/D",
+                "a/x/Other",
+        };
+        boolean[] expected = {true, true, false, true, true, true, false, false, true, true, false};
+
+        for (int round = 0; round < 2; round++)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                assertEquals(expected[i], shared.matches(names[i]), names[i]);
+                // 状態を記録していないマッチャと同じ結果になる
+                assertEquals(expected[i], ExcludeMatcher.compile(patterns).matches(names[i]), names[i]);
+            }
+        }
+    }
+}